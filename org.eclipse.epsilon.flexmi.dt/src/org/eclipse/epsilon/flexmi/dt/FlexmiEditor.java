@@ -113,15 +113,19 @@ public class FlexmiEditor extends TextEditor {
 			resourceSet.getPackageRegistry().put(EcorePackage.eINSTANCE.getNsURI(), EcorePackage.eINSTANCE);
 			resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("*", new FlexmiResourceFactory());
 			resource = (FlexmiResource) resourceSet.createResource(URI.createFileURI(file.getLocation().toOSString()));
-			resource.load(new ByteArrayInputStream(code.getBytes()), null);
+			Map<String, Object> options = new HashMap<String, Object>();
+			options.put(FlexmiResource.OPTION_PARSER, FlexmiResource.PARSER_TOKENIZER);
+			resource.load(new ByteArrayInputStream(code.getBytes()), options);
 		}
 		catch (Exception ex) {
 				
 				if (ex instanceof RuntimeException) {
-					if (ex.getCause() instanceof TransformerException) {
-						if (ex.getCause().getCause() instanceof SAXParseException) {
-							parseException = (SAXParseException) ex.getCause().getCause();
-						}
+					Throwable cause = ex.getCause();
+					if (cause instanceof TransformerException) {
+						cause = cause.getCause();
+					}
+					if (cause instanceof SAXParseException) {
+						parseException = (SAXParseException) cause;
 					}
 				}
 				else {
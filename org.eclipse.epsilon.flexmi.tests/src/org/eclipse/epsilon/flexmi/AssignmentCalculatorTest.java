@@ -0,0 +1,48 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.benchmark.AssignmentCalculatorBenchmark;
+import org.eclipse.epsilon.flexmi.benchmark.AssignmentCalculatorBenchmark.MatrixScorer;
+import org.junit.Test;
+
+public class AssignmentCalculatorTest {
+	
+	@Test
+	public void testAgreesWithExhaustiveSearch() {
+		AssignmentCalculator calculator = new AssignmentCalculator();
+		ExhaustiveAssignmentCalculator exhaustive = new ExhaustiveAssignmentCalculator();
+		
+		// Scores are multiples of 1/4 so that their float sums are exact
+		// and both implementations see the same ties
+		Random random = new Random(42);
+		for (int n = 0; n < 20000; n++) {
+			List<Integer> lefts = AssignmentCalculatorBenchmark.range(random.nextInt(6));
+			List<Integer> rights = AssignmentCalculatorBenchmark.range(random.nextInt(6));
+			MatrixScorer scorer = new MatrixScorer(lefts.size(), rights.size(), 4, random);
+			assertEquals(scorer.toString(), exhaustive.calculateAssignment(lefts, rights, scorer), calculator.calculateAssignment(lefts, rights, scorer));
+		}
+	}
+	
+	@Test
+	public void testLargeInstances() {
+		// Far beyond the reach of the exhaustive search, so only
+		// check that the assignment is a valid one
+		AssignmentCalculator calculator = new AssignmentCalculator();
+		List<Integer> items = AssignmentCalculatorBenchmark.range(200);
+		MatrixScorer scorer = new MatrixScorer(200, 200, 1000, new Random(200));
+		Map<Object, Object> assignment = calculator.calculateAssignment(items, items, scorer);
+		assertTrue(assignment.size() > 100);
+		assertEquals(assignment.size(), new HashSet<Object>(assignment.values()).size());
+		for (Map.Entry<Object, Object> entry : assignment.entrySet()) {
+			assertTrue(scorer.score(entry.getKey(), entry.getValue()) >= 0);
+		}
+	}
+
+}
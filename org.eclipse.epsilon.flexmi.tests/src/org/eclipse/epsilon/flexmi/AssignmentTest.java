@@ -0,0 +1,124 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.epsilon.flexmi.benchmark.AssignmentBenchmark;
+import org.junit.Test;
+
+public class AssignmentTest {
+	
+	// Few distinct similarities, so that many assignments tie
+	protected static final int[] TIED_SIMILARITIES = {0, 1, 2, 3, 4, 5, 6, 7, 10};
+	
+	protected FlexmiResource resource = new FlexmiResource(URI.createURI("test.flexmi"));
+	
+	@Test
+	public void testAgreesWithHungarianAlgorithm() {
+		SmallAssignmentSolver solver = new SmallAssignmentSolver();
+		for (int[][] similarities : AssignmentBenchmark.generateSimilarityMatrices(5000, new Random(42))) {
+			int[] expected = new HungarianAlgorithm(AssignmentBenchmark.toCostMatrix(similarities)).execute();
+			assertArrayEquals(expected, resource.getAssignment(similarities));
+			int[] actual = solver.execute(AssignmentBenchmark.toCostMatrix(similarities));
+			if (actual != null) assertArrayEquals(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testTiesAreBrokenAsByHungarianAlgorithm() {
+		Random random = new Random(1);
+		int tied = 0;
+		for (int m = 0; m < 20000; m++) {
+			int[][] similarities = generateTiedSimilarities(1 + random.nextInt(12), 1 + random.nextInt(20), random);
+			int[] expected = new HungarianAlgorithm(AssignmentBenchmark.toCostMatrix(similarities)).execute();
+			assertEquals(Arrays.deepToString(similarities), Arrays.toString(expected), Arrays.toString(resource.getAssignment(similarities)));
+			if (resource.smallAssignmentSolver.isTied()) tied++;
+		}
+		assertTrue(tied > 0);
+	}
+	
+	@Test
+	public void testSmallSolverReportsTies() {
+		SmallAssignmentSolver solver = new SmallAssignmentSolver();
+		assertNull(solver.executeOnInverseSimilarities(new int[][] {{1, 1}}));
+		assertTrue(solver.isTied());
+		assertArrayEquals(new int[] {1}, solver.executeOnInverseSimilarities(new int[][] {{1, 2}}));
+		assertFalse(solver.isTied());
+		assertNull(solver.executeOnInverseSimilarities(new int[][] {{1}, {1}}));
+		assertFalse(solver.isTied());
+	}
+	
+	@Test
+	public void testUniqueAssignmentsAreRecognised() {
+		IntegerHungarianAlgorithm algorithm = new IntegerHungarianAlgorithm();
+		Random random = new Random(3);
+		for (int m = 0; m < 20000; m++) {
+			int[][] similarities = generateTiedSimilarities(1 + random.nextInt(6), 1 + random.nextInt(6), random);
+			Set<String> optimal = getOptimalAssignments(similarities);
+			assertTrue(algorithm.resetToInverseSimilarities(similarities));
+			int[] assignment = new int[similarities.length];
+			algorithm.execute(assignment);
+			assertTrue(optimal.contains(Arrays.toString(assignment)));
+			assertEquals(Arrays.deepToString(similarities), optimal.size() == 1, algorithm.hasUniqueAssignment());
+		}
+	}
+	
+	protected int[][] generateTiedSimilarities(int rows, int cols, Random random) {
+		int values = 1 + random.nextInt(TIED_SIMILARITIES.length);
+		int[][] similarities = new int[rows][cols];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) similarities[i][j] = TIED_SIMILARITIES[random.nextInt(values)];
+		}
+		return similarities;
+	}
+	
+	/**
+	 * Enumerates the assignments of the most rows that can be assigned
+	 * to distinct columns, and returns the ones of minimum cost
+	 */
+	protected Set<String> getOptimalAssignments(int[][] similarities) {
+		// Scaled so that all costs are integers
+		long[][] costs = new long[similarities.length][similarities[0].length];
+		for (int i = 0; i < costs.length; i++) {
+			for (int j = 0; j < costs[i].length; j++) costs[i][j] = similarities[i][j] != 0 ? 2520 / similarities[i][j] : 5040;
+		}
+		Set<String> optimal = new HashSet<String>();
+		long[] minimum = {Long.MAX_VALUE};
+		enumerate(costs, 0, new int[costs.length], new boolean[costs[0].length], 0, Math.min(costs.length, costs[0].length), minimum, optimal);
+		return optimal;
+	}
+	
+	protected void enumerate(long[][] costs, int row, int[] assignment, boolean[] assigned, long cost, int remaining, long[] minimum, Set<String> optimal) {
+		if (row == costs.length) {
+			if (remaining > 0) return;
+			if (cost < minimum[0]) {
+				minimum[0] = cost;
+				optimal.clear();
+			}
+			if (cost == minimum[0]) optimal.add(Arrays.toString(assignment));
+			return;
+		}
+		if (costs.length - row > remaining) {
+			assignment[row] = -1;
+			enumerate(costs, row + 1, assignment, assigned, cost, remaining, minimum, optimal);
+		}
+		if (remaining == 0) return;
+		for (int j = 0; j < costs[row].length; j++) {
+			if (assigned[j]) continue;
+			assigned[j] = true;
+			assignment[row] = j;
+			enumerate(costs, row + 1, assignment, assigned, cost + costs[row][j], remaining - 1, minimum, optimal);
+			assigned[j] = false;
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.junit.Test;
+
+public class EObjectExtentIndexTest {
+	
+	@Test
+	public void testInstancesAreListedInCreationOrder() {
+		EObjectExtentIndex index = new EObjectExtentIndex();
+		List<EObject> created = new ArrayList<EObject>();
+		for (int i = 0; i < 30; i++) {
+			switch (i % 3) {
+				case 0: created.add(EcoreFactory.eINSTANCE.createEClass()); break;
+				case 1: created.add(EcoreFactory.eINSTANCE.createEDataType()); break;
+				default: created.add(EcoreFactory.eINSTANCE.createEEnum()); break;
+			}
+			index.add(created.get(i));
+		}
+		
+		assertEquals(created, index.getInstances(EcorePackage.Literals.EOBJECT));
+		assertEquals(created, index.getInstances(EcorePackage.Literals.ECLASSIFIER));
+		assertEquals(20, index.getInstances(EcorePackage.Literals.EDATA_TYPE).size());
+		assertEquals(30, index.getUnorderedInstances(EcorePackage.Literals.ECLASSIFIER).size());
+		assertTrue(new HashSet<EObject>(created).equals(new HashSet<EObject>(index.getUnorderedInstances(EcorePackage.Literals.EOBJECT))));
+		
+		EObjectExtentIndex other = new EObjectExtentIndex();
+		other.add(EcoreFactory.eINSTANCE.createEClass());
+		other.addAll(new EObjectExtentIndex());
+		other.addAll(index);
+		assertEquals(created, index.getInstances(EcorePackage.Literals.EOBJECT));
+		assertEquals(created, other.getInstances(EcorePackage.Literals.EOBJECT).subList(1, 31));
+	}
+
+}
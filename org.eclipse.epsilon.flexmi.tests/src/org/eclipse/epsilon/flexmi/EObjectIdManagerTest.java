@@ -0,0 +1,124 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.epsilon.flexmi.benchmark.EObjectIdManagerBenchmark;
+import org.junit.Test;
+
+public class EObjectIdManagerTest {
+	
+	protected static final int CLASSES = 2000;
+	
+	@Test
+	public void testRegistration() {
+		EObjectIdManager manager = new EObjectIdManager();
+		EObject first = EcoreFactory.eINSTANCE.createEClass();
+		EObject second = EcoreFactory.eINSTANCE.createEClass();
+		assertFalse(manager.hasId(first));
+		assertNull(manager.getId(first));
+		
+		manager.setEObjectId(first, "a");
+		manager.setEObjectId(first, "A");
+		manager.setEObjectId(second, "A");
+		assertTrue(manager.hasId(first));
+		assertEquals("a", manager.getId(first));
+		assertEquals("A", manager.getId(second));
+		assertEquals(Arrays.asList(first), manager.getEObjectsById("a"));
+		assertEquals(Arrays.asList(first, second), manager.getEObjectsById("A"));
+		assertEquals(2, manager.size());
+	}
+	
+	@Test
+	public void testAddAll() {
+		EObject[] eObjects = createEObjects(10);
+		EObjectIdManager manager = new EObjectIdManager();
+		EObjectIdManager other = new EObjectIdManager();
+		for (int i = 0; i < 10; i++) {
+			EObjectIdManager target = i < 5 ? manager : other;
+			target.setEObjectId(eObjects[i], "id" + i);
+			target.setEObjectId(eObjects[i], "shared");
+		}
+		other.setEObjectId(eObjects[0], "late");
+		
+		manager.addAll(other);
+		assertEquals(10, manager.size());
+		assertEquals(Arrays.asList(eObjects), manager.getEObjectsById("shared"));
+		assertSame(eObjects[7], manager.getEObjectsById("id7").get(0));
+		assertEquals("id0", manager.getId(eObjects[0]));
+		assertEquals(Arrays.asList(eObjects[0]), manager.getEObjectsById("late"));
+	}
+	
+	@Test
+	public void testConcurrentRegistration() throws Exception {
+		EObject[] eObjects = createEObjects(50000);
+		String[] names = new String[eObjects.length];
+		for (int i = 0; i < names.length; i++) names[i] = "element" + i;
+		
+		EObjectIdManager manager = new EObjectIdManager(eObjects.length);
+		EObjectIdManagerBenchmark.fillConcurrently(manager, eObjects, names, 4);
+		assertEquals(eObjects.length, manager.size());
+		for (int i = 0; i < eObjects.length; i++) {
+			assertEquals("id" + i, manager.getId(eObjects[i]));
+			assertEquals(Arrays.asList(eObjects[i]), manager.getEObjectsById("id" + i));
+			assertEquals(Arrays.asList(eObjects[i]), manager.getEObjectsById(names[i]));
+		}
+	}
+	
+	@Test
+	public void testReferencesByNameToEObjectsWithIds() throws Exception {
+		for (boolean parallelMapping : new boolean[] {false, true}) {
+			StringBuilder document = new StringBuilder();
+			document.append("<?nsuri http://www.eclipse.org/emf/2002/Ecore?>\n<package name=\"p\">\n");
+			for (int i = 0; i < CLASSES; i++) {
+				document.append("\t<class id=\"c").append(i).append("\" name=\"C").append(i).append("\"");
+				if (i > 0) document.append(" supertypes=\"C").append(i - 1).append("\"");
+				document.append("/>\n");
+			}
+			document.append("</package>");
+			
+			FlexmiResource resource = load(document.toString(), parallelMapping);
+			assertEquals(0, resource.getWarnings().size());
+			EPackage ePackage = (EPackage) resource.getContents().get(0);
+			for (int i = 1; i < CLASSES; i++) {
+				EClass eClass = (EClass) ePackage.getEClassifiers().get(i);
+				assertEquals(Arrays.asList(ePackage.getEClassifiers().get(i - 1)), eClass.getESuperTypes());
+			}
+		}
+	}
+	
+	protected EObject[] createEObjects(int size) {
+		EObject[] eObjects = new EObject[size];
+		for (int i = 0; i < size; i++) eObjects[i] = EcoreFactory.eINSTANCE.createEClass();
+		return eObjects;
+	}
+	
+	protected FlexmiResource load(String document, boolean parallelMapping) throws Exception {
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getPackageRegistry().put(EcorePackage.eINSTANCE.getNsURI(), EcorePackage.eINSTANCE);
+		FlexmiResource resource = new FlexmiResource(URI.createURI("test.flexmi"));
+		resourceSet.getResources().add(resource);
+		
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put(FlexmiResource.OPTION_PARALLEL_MAPPING, parallelMapping);
+		resource.load(new ByteArrayInputStream(document.getBytes("UTF-8")), options);
+		return resource;
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.epsilon.flexmi.AssignmentCalculator.AssignmentScorer;
+
+/**
+ * The previous implementation of the AssignmentCalculator, which scores
+ * every assignment of the first left items to distinct right items
+ */
+public class ExhaustiveAssignmentCalculator {
+	
+	public Map<Object, Object> calculateAssignment(List<?> leftList, List<?> rightList, AssignmentScorer scorer) {
+		List<Object[]> bestAssignment = null;
+		float maxScore = Float.NEGATIVE_INFINITY;
+		
+		for (List<Object[]> assignmentList : calculateAssignments(new ArrayList<Object>(leftList), new ArrayList<Object>(rightList))) {
+			float score = 0;
+			for (Object[] assignment : assignmentList) {
+				score += scorer.score(assignment[0], assignment[1]);
+			}
+			if (score > maxScore) {
+				maxScore = score;
+				bestAssignment = assignmentList;
+			}
+		}
+		
+		HashMap<Object, Object> map = new HashMap<Object, Object>();
+		if (bestAssignment != null) {
+			for (Object[] assignment : bestAssignment) {
+				if (scorer.score(assignment[0], assignment[1]) >= 0) {
+					map.put(assignment[0], assignment[1]);
+				}
+			}
+		}
+		return map;
+	}
+	
+	protected List<List<Object[]>> calculateAssignments(ArrayList<Object> leftList, ArrayList<Object> rightList) {
+		List<List<Object[]>> assignmentLists = new ArrayList<List<Object[]>>();
+		if (leftList.isEmpty()) return assignmentLists;
+		
+		Object firstLeft = leftList.get(0);
+		for (Object right : rightList) {
+			@SuppressWarnings("unchecked")
+			ArrayList<Object> newLeftList = (ArrayList<Object>) leftList.clone();
+			newLeftList.remove(firstLeft);
+			@SuppressWarnings("unchecked")
+			ArrayList<Object> newRightList = (ArrayList<Object>) rightList.clone();
+			newRightList.remove(right);
+			
+			List<List<Object[]>> tails = calculateAssignments(newLeftList, newRightList);
+			if (tails.isEmpty()) tails.add(new ArrayList<Object[]>());
+			for (List<Object[]> tail : tails) {
+				List<Object[]> assignmentList = new ArrayList<Object[]>();
+				assignmentList.add(new Object[] {firstLeft, right});
+				assignmentList.addAll(tail);
+				assignmentLists.add(assignmentList);
+			}
+		}
+		return assignmentLists;
+	}
+
+}
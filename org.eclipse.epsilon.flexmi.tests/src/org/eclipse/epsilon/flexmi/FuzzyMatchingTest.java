@@ -0,0 +1,55 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.Test;
+
+public class FuzzyMatchingTest {
+	
+	@Test
+	public void testThresholdChangeInvalidatesMappings() throws Exception {
+		for (boolean parallelMapping : new boolean[] {false, true}) {
+			StringBuilder document = new StringBuilder();
+			document.append("<?nsuri http://www.eclipse.org/emf/2002/Ecore?>\n<package name=\"p\">\n");
+			document.append("\t<clazz name=\"A\"/>\n");
+			document.append("\t<?fuzzyMatchingThreshold 100?>\n");
+			document.append("\t<clazz name=\"B\"/>\n");
+			document.append("</package>");
+			
+			FlexmiResource resource = load(document.toString(), parallelMapping);
+			EPackage ePackage = (EPackage) resource.getContents().get(0);
+			assertEquals(1, ePackage.getEClassifiers().size());
+			assertEquals("A", ePackage.getEClassifiers().get(0).getName());
+		}
+	}
+	
+	@Test
+	public void testSimilaritiesAreCachedByDefault() {
+		FlexmiResource resource = new FlexmiResource(URI.createURI("test.flexmi"));
+		assertEquals(CachedStringSimilarityProvider.class, resource.stringSimilarityProvider.getClass());
+		assertTrue(resource.isDefaultStringSimilarity(resource.stringSimilarityProvider));
+	}
+	
+	protected FlexmiResource load(String document, boolean parallelMapping) throws Exception {
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getPackageRegistry().put(EcorePackage.eINSTANCE.getNsURI(), EcorePackage.eINSTANCE);
+		FlexmiResource resource = new FlexmiResource(URI.createURI("test.flexmi"));
+		resourceSet.getResources().add(resource);
+		
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put(FlexmiResource.OPTION_PARALLEL_MAPPING, parallelMapping);
+		resource.load(new ByteArrayInputStream(document.getBytes("UTF-8")), options);
+		return resource;
+	}
+
+}
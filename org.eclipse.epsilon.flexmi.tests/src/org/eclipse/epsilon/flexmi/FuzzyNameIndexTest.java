@@ -0,0 +1,36 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.benchmark.FuzzyNameIndexBenchmark;
+import org.junit.Test;
+
+public class FuzzyNameIndexTest {
+	
+	@Test
+	public void testAgreesWithLinearScan() {
+		BoundedStringSimilarityProvider similarityProvider = new DefaultStringSimilarityProvider();
+		for (int classes : new int[] {1, 10, 100, 1000}) {
+			Random random = new Random(classes);
+			String[] names = FuzzyNameIndexBenchmark.generateNames(classes, random);
+			String[] queries = FuzzyNameIndexBenchmark.generateQueries(names, 500, random);
+			FuzzyNameIndex index = new FuzzyNameIndex(names);
+			for (String query : queries) {
+				assertEquals(query, FuzzyNameIndexBenchmark.linearScan(names, query, similarityProvider), index.getBestMatch(query, similarityProvider, 1));
+			}
+		}
+	}
+	
+	@Test
+	public void testMinimumSimilarity() {
+		BoundedStringSimilarityProvider similarityProvider = new DefaultStringSimilarityProvider();
+		FuzzyNameIndex index = new FuzzyNameIndex(new String[] {"class", "attribute", "reference"});
+		assertEquals(0, index.getBestMatch("clazz", similarityProvider, 1));
+		assertEquals(0, index.getBestMatch("clazz", similarityProvider, 3));
+		assertEquals(-1, index.getBestMatch("clazz", similarityProvider, 4));
+		assertEquals(-1, index.getBestMatch("xyz", similarityProvider, 1));
+	}
+
+}
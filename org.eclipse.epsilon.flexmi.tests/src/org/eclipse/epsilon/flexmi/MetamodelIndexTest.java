@@ -0,0 +1,135 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.impl.EPackageRegistryImpl;
+import org.junit.Test;
+
+public class MetamodelIndexTest {
+	
+	@Test
+	public void testIndicesAreSharedPerRegistry() {
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+		MetamodelIndex index = MetamodelIndex.forRegistry(registry);
+		assertSame(index, MetamodelIndex.forRegistry(registry));
+		
+		// Registries with the same packages are different registries
+		EPackage.Registry other = new EPackageRegistryImpl();
+		other.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+		assertNotSame(index, MetamodelIndex.forRegistry(other));
+	}
+	
+	@Test
+	public void testRegisteringPackagesRebuildsTheIndex() {
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+		MetamodelIndex index = MetamodelIndex.forRegistry(registry);
+		
+		EPackage ePackage = createPackage("p", "A");
+		registry.put(ePackage.getNsURI(), ePackage);
+		MetamodelIndex rebuilt = MetamodelIndex.forRegistry(registry);
+		assertNotSame(index, rebuilt);
+		assertTrue(rebuilt.getConcreteEClasses().contains(ePackage.getEClassifier("A")));
+	}
+	
+	@Test
+	public void testChangingDynamicPackagesRebuildsTheIndex() {
+		EPackage ePackage = createPackage("p", "A");
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(ePackage.getNsURI(), ePackage);
+		MetamodelIndex index = MetamodelIndex.forRegistry(registry);
+		assertFalse(index.isStale());
+		
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("B");
+		ePackage.getEClassifiers().add(eClass);
+		assertTrue(index.isStale());
+		
+		MetamodelIndex rebuilt = MetamodelIndex.forRegistry(registry);
+		assertNotSame(index, rebuilt);
+		assertEquals(2, rebuilt.getConcreteEClasses().size());
+		assertEquals(1, countChangeTrackers(ePackage));
+		
+		// Nested changes are tracked too
+		eClass.setAbstract(true);
+		assertTrue(rebuilt.isStale());
+	}
+	
+	@Test
+	public void testIndicesShareTheChangeTrackerOfAPackage() {
+		EPackage ePackage = createPackage("p", "A");
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(ePackage.getNsURI(), ePackage);
+		EPackage.Registry other = new EPackageRegistryImpl();
+		other.put(ePackage.getNsURI(), ePackage);
+		MetamodelIndex index = MetamodelIndex.forRegistry(registry);
+		MetamodelIndex otherIndex = MetamodelIndex.forRegistry(other);
+		assertEquals(1, countChangeTrackers(ePackage));
+		
+		ePackage.setName("q");
+		assertTrue(index.isStale());
+		assertTrue(otherIndex.isStale());
+		
+		// Rebuilding both indices replaces their registrations
+		index = MetamodelIndex.forRegistry(registry);
+		otherIndex = MetamodelIndex.forRegistry(other);
+		assertEquals(1, countChangeTrackers(ePackage));
+		
+		index.stopTrackingChanges();
+		assertEquals(1, countChangeTrackers(ePackage));
+		otherIndex.stopTrackingChanges();
+		assertEquals(0, countChangeTrackers(ePackage));
+	}
+	
+	@Test
+	public void testContainmentCandidatesAreSortedByName() {
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+		MetamodelIndex index = MetamodelIndex.forRegistry(registry);
+		List<String> names = new ArrayList<String>();
+		for (EClass candidate : index.getContainmentCandidates(EcorePackage.Literals.EOPERATION)) {
+			names.add(candidate.getName());
+		}
+		assertEquals("[EAnnotation, EGenericType, EParameter, ETypeParameter]", names.toString());
+	}
+	
+	@Test
+	public void testGeneratedPackagesAreNotTracked() {
+		EPackage.Registry registry = new EPackageRegistryImpl();
+		registry.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+		MetamodelIndex.forRegistry(registry);
+		assertEquals(0, countChangeTrackers(EcorePackage.eINSTANCE));
+	}
+	
+	protected int countChangeTrackers(EPackage ePackage) {
+		int changeTrackers = 0;
+		for (Adapter adapter : ePackage.eAdapters()) {
+			if (adapter instanceof MetamodelIndex.ChangeTracker) changeTrackers++;
+		}
+		return changeTrackers;
+	}
+	
+	protected EPackage createPackage(String name, String eClassName) {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName(name);
+		ePackage.setNsURI(name);
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName(eClassName);
+		ePackage.getEClassifiers().add(eClass);
+		return ePackage;
+	}
+	
+}
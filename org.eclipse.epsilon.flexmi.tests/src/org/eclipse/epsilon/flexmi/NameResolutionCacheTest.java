@@ -0,0 +1,109 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.junit.Test;
+
+public class NameResolutionCacheTest {
+	
+	protected NameIndex candidates = createCandidates(100);
+	
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File directory = createDirectory();
+		File file = new File(directory, "resolutions");
+		NameResolutionCache cache = new NameResolutionCache();
+		cache.put(candidates, "c1x", 0, 1);
+		cache.put(candidates, "none", 0, -1);
+		cache.save(file);
+		cache.put(candidates, "c2x", 0, 2);
+		cache.save(file);
+		assertEquals(1, directory.list().length);
+		
+		NameResolutionCache loaded = new NameResolutionCache();
+		loaded.load(file);
+		assertEquals(3, loaded.size());
+		assertEquals(1, loaded.get(candidates, "c1x", 0));
+		assertEquals(-1, loaded.get(candidates, "none", 0));
+		assertEquals(2, loaded.get(candidates, "c2x", 0));
+		assertEquals(-2, loaded.get(candidates, "c1x", 1));
+	}
+	
+	@Test
+	public void testFailedSaveIsRetried() throws Exception {
+		File directory = createDirectory();
+		File file = new File(directory, "resolutions");
+		NameResolutionCache cache = new NameResolutionCache();
+		cache.put(candidates, "c1x", 0, 1);
+		cache.save(file);
+		
+		cache.put(candidates, "c2x", 0, 2);
+		try {
+			cache.save(new File(new File(directory, "missing"), "resolutions"));
+			fail();
+		}
+		catch (IOException ex) {
+			// The resolutions remain to be saved
+		}
+		cache.save(file);
+		assertEquals(1, directory.list().length);
+		
+		NameResolutionCache loaded = new NameResolutionCache();
+		loaded.load(file);
+		assertEquals(2, loaded.get(candidates, "c2x", 0));
+	}
+	
+	@Test
+	public void testCapacity() throws Exception {
+		NameResolutionCache cache = new NameResolutionCache(10);
+		for (int i = 0; i < 100; i++) cache.put(candidates, "c" + i + "x", 0, i);
+		assertEquals(10, cache.size());
+		assertEquals(90, cache.getEvictions());
+		
+		File file = new File(createDirectory(), "resolutions");
+		NameResolutionCache full = new NameResolutionCache(100);
+		for (int i = 0; i < 100; i++) full.put(candidates, "c" + i + "x", 0, i);
+		full.save(file);
+		NameResolutionCache loaded = new NameResolutionCache(10);
+		loaded.load(file);
+		assertEquals(10, loaded.size());
+	}
+	
+	@Test
+	public void testUsedResolutionsSurviveEviction() {
+		NameResolutionCache cache = new NameResolutionCache(10);
+		for (int i = 0; i < 10; i++) cache.put(candidates, "c" + i + "x", 0, i);
+		for (int i = 0; i < 5; i++) assertEquals(i, cache.get(candidates, "c" + i + "x", 0));
+		for (int i = 10; i < 15; i++) cache.put(candidates, "c" + i + "x", 0, i);
+		assertEquals(10, cache.size());
+		assertEquals(5, cache.getEvictions());
+		for (int i = 0; i < 5; i++) assertEquals(i, cache.get(candidates, "c" + i + "x", 0));
+	}
+	
+	protected NameIndex createCandidates(int size) {
+		List<EClass> eClasses = new ArrayList<EClass>();
+		for (int i = 0; i < size; i++) {
+			EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+			eClass.setName("C" + i);
+			eClasses.add(eClass);
+		}
+		return new NameIndex(eClasses, "classes");
+	}
+	
+	protected File createDirectory() throws IOException {
+		File directory = File.createTempFile("resolutions", "");
+		assertTrue(directory.delete() && directory.mkdir());
+		directory.deleteOnExit();
+		return directory;
+	}
+
+}
@@ -0,0 +1,169 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.Test;
+
+public class ParallelMappingTest {
+	
+	protected static final int CLASSES = 2000;
+	
+	@Test
+	public void testParallelMappingMatchesSequentialMapping() throws Exception {
+		assertEquals(describe(load(new FlexmiResource(URI.createURI("sequential.flexmi")), false)),
+				describe(load(new FlexmiResource(URI.createURI("parallel.flexmi")), true)));
+	}
+	
+	@Test
+	public void testParallelMappingUsesTheHooksOfTheResource() throws Exception {
+		CustomResource resource = load(new CustomResource(), true);
+		
+		int eClasses = 0;
+		for (TreeIterator<EObject> it = resource.getAllContents(); it.hasNext();) {
+			EObject eObject = it.next();
+			if (eObject instanceof EClass) {
+				eClasses++;
+				EClass eClass = (EClass) eObject;
+				assertNotNull(eClass.getEAnnotation(CustomResource.ANNOTATION_SOURCE));
+				// The custom candidates exclude the abstract attribute
+				assertFalse(eClass.isAbstract());
+			}
+		}
+		assertEquals(CLASSES, eClasses);
+		assertTrue(resource.similarities.get() > 0);
+		assertFalse(resource.createdEObjects.get(resource.createdEObjects.size() - 1) == Thread.currentThread());
+	}
+	
+	@Test
+	public void testSubclassesMapSequentiallyUnlessTheyOptIn() throws Exception {
+		CustomResource resource = new CustomResource();
+		resource.parallelMappingSupported = false;
+		assertFalse(resource.isParallelMappingSupported());
+		assertTrue(new FlexmiResource(URI.createURI("test.flexmi")).isParallelMappingSupported());
+		load(resource, true);
+		// A package, its classes and their attributes
+		assertEquals(CLASSES * 2 + 1, resource.createdEObjects.size());
+		for (Thread thread : resource.createdEObjects) assertEquals(Thread.currentThread(), thread);
+	}
+	
+	@Test
+	public void testSubclassesThatOverrideMappingHooksMapSequentially() throws Exception {
+		FlexmiResource unrelatedOverride = new FlexmiResource(URI.createURI("test.flexmi")) {
+			@Override
+			protected void processOption(String key, String value) {
+				super.processOption(key, value);
+			}
+		};
+		assertTrue(unrelatedOverride.isParallelMappingSupported());
+		
+		FlexmiResource hookOverride = new FlexmiResource(URI.createURI("test.flexmi")) {
+			@Override
+			protected EObject createEObject(EClass eClass) {
+				return super.createEObject(eClass);
+			}
+		};
+		assertFalse(hookOverride.isParallelMappingSupported());
+	}
+	
+	protected <T extends FlexmiResource> T load(T resource, boolean parallelMapping) throws Exception {
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getPackageRegistry().put(EcorePackage.eINSTANCE.getNsURI(), EcorePackage.eINSTANCE);
+		resourceSet.getResources().add(resource);
+		
+		StringBuilder document = new StringBuilder();
+		document.append("<?nsuri http://www.eclipse.org/emf/2002/Ecore?>\n<package name=\"p\">\n");
+		for (int i = 0; i < CLASSES; i++) {
+			document.append("\t<class name=\"C").append(i).append("\" abstract=\"true\"");
+			if (i > 0) document.append(" supertypes=\"C").append(i - 1).append("\"");
+			document.append(">\n\t\t<attr name=\"a").append(i).append("\" type=\"EString\"/>\n\t</class>\n");
+		}
+		document.append("</package>");
+		
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put(FlexmiResource.OPTION_PARALLEL_MAPPING, parallelMapping);
+		resource.load(new ByteArrayInputStream(document.toString().getBytes("UTF-8")), options);
+		return resource;
+	}
+	
+	protected String describe(FlexmiResource resource) {
+		StringBuilder description = new StringBuilder();
+		for (TreeIterator<EObject> it = resource.getAllContents(); it.hasNext();) {
+			EObject eObject = it.next();
+			description.append(eObject.eClass().getName());
+			for (EStructuralFeature eStructuralFeature : eObject.eClass().getEAllAttributes()) {
+				if (eObject.eIsSet(eStructuralFeature)) description.append(" ").append(eStructuralFeature.getName()).append("=").append(eObject.eGet(eStructuralFeature));
+			}
+			if (eObject instanceof EClass) {
+				for (EClass superType : ((EClass) eObject).getESuperTypes()) description.append(" <: ").append(superType.getName());
+			}
+			description.append("\n");
+		}
+		description.append(resource.getWarnings().size()).append(" warnings");
+		return description.toString();
+	}
+	
+	protected static class CustomResource extends FlexmiResource {
+		
+		protected static final String ANNOTATION_SOURCE = "created";
+		
+		protected boolean parallelMappingSupported = true;
+		protected List<Thread> createdEObjects = new ArrayList<Thread>();
+		protected AtomicInteger similarities = new AtomicInteger();
+		
+		public CustomResource() {
+			super(URI.createURI("custom.flexmi"));
+			stringSimilarityProvider = new StringSimilarityProvider() {
+				
+				@Override
+				public int getSimilarity(String first, String second) {
+					similarities.incrementAndGet();
+					return new DefaultStringSimilarityProvider().getSimilarity(first, second);
+				}
+			};
+		}
+		
+		@Override
+		protected boolean isParallelMappingSupported() {
+			return parallelMappingSupported;
+		}
+		
+		@Override
+		protected EObject createEObject(EClass eClass) {
+			synchronized (createdEObjects) {
+				createdEObjects.add(Thread.currentThread());
+			}
+			EObject eObject = super.createEObject(eClass);
+			if (eObject instanceof EClass) {
+				((EClass) eObject).getEAnnotations().add(EcorePackage.eINSTANCE.getEcoreFactory().createEAnnotation());
+				((EClass) eObject).getEAnnotations().get(0).setSource(ANNOTATION_SOURCE);
+			}
+			return eObject;
+		}
+		
+		@Override
+		protected List<EStructuralFeature> getCandidateStructuralFeaturesForAttribute(EClass eClass) {
+			List<EStructuralFeature> candidates = new ArrayList<EStructuralFeature>(super.getCandidateStructuralFeaturesForAttribute(eClass));
+			candidates.remove(EcorePackage.Literals.ECLASS__ABSTRACT);
+			return candidates;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.eclipse.epsilon.flexmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.benchmark.StringSimilarityBenchmark;
+import org.junit.Test;
+
+public class StringSimilarityProviderTest {
+	
+	protected static final int PAIRS = 20000;
+	
+	@Test
+	public void testAgreesWithReference() {
+		BoundedStringSimilarityProvider provider = new DefaultStringSimilarityProvider();
+		StringSimilarityProvider reference = new ReferenceStringSimilarityProvider();
+		Random random = new Random(42);
+		for (int i = 0; i < PAIRS; i++) {
+			String first = StringSimilarityBenchmark.generateName(random);
+			String second = random.nextInt(8) == 0 ? first + StringSimilarityBenchmark.generateName(random) : StringSimilarityBenchmark.generateName(random);
+			int expected = reference.getSimilarity(first, second);
+			assertEquals(first + " / " + second, expected, provider.getSimilarity(first, second));
+			
+			// Below the minimum, any smaller value may be returned
+			int minimum = random.nextInt(12);
+			int bounded = provider.getSimilarity(first, second, minimum);
+			if (expected >= minimum) assertEquals(first + " / " + second + " / " + minimum, expected, bounded);
+			else assertTrue(first + " / " + second + " / " + minimum, bounded < minimum);
+		}
+	}
+	
+	@Test
+	public void testEdgeCases() {
+		StringSimilarityProvider provider = new DefaultStringSimilarityProvider();
+		StringSimilarityProvider reference = new ReferenceStringSimilarityProvider();
+		String[] names = {null, "", "a", "ab", "abc", "ba", "aaaa", "name", "names", "surname", "eClassifiers"};
+		for (String first : names) {
+			for (String second : names) {
+				assertEquals(first + " / " + second, reference.getSimilarity(first, second), provider.getSimilarity(first, second));
+			}
+		}
+	}
+	
+	@Test
+	public void testCachedAgreesWithProvider() {
+		StringSimilarityProvider provider = new DefaultStringSimilarityProvider();
+		CachedStringSimilarityProvider cached = new CachedStringSimilarityProvider(provider, 64);
+		Random random = new Random(7);
+		String[] names = new String[256];
+		for (int i = 0; i < names.length; i++) names[i] = StringSimilarityBenchmark.generateName(random);
+		for (int i = 0; i < PAIRS; i++) {
+			String first = names[random.nextInt(random.nextBoolean() ? 16 : names.length)];
+			String second = names[random.nextInt(random.nextBoolean() ? 16 : names.length)];
+			assertEquals(first + " / " + second, provider.getSimilarity(first, second), cached.getSimilarity(first, second));
+		}
+	}
+	
+	@Test
+	public void testCachedPairsHoldInternedNames() {
+		CachedStringSimilarityProvider cached = new CachedStringSimilarityProvider(new DefaultStringSimilarityProvider(), 64);
+		String one = new String("name");
+		String other = new String("names");
+		cached.getSimilarity(one, other, 1);
+		cached.getSimilarity(one, other);
+		assertEquals(1, cached.getHits());
+		
+		// The probe does not keep the last names alive
+		assertNull(CachedStringSimilarityProvider.probe.get().one);
+		assertNull(CachedStringSimilarityProvider.probe.get().other);
+		for (CachedStringSimilarityProvider.Stripe stripe : cached.stripes) {
+			for (CachedStringSimilarityProvider.Pair pair : stripe.similarities.keySet()) {
+				assertSame("name", pair.one);
+				assertSame("names", pair.other);
+			}
+		}
+	}
+	
+	@Test
+	public void testCachedFallsBackToExactSimilarities() {
+		// The reference provider does not implement the bounded variant
+		StringSimilarityProvider provider = new ReferenceStringSimilarityProvider();
+		CachedStringSimilarityProvider cached = new CachedStringSimilarityProvider(provider, 64);
+		assertEquals(provider.getSimilarity("abcd", "xbcdy"), cached.getSimilarity("abcd", "xbcdy", 10));
+		assertEquals(provider.getSimilarity("abcd", "xbcdy"), cached.getSimilarity("abcd", "xbcdy"));
+		assertEquals(1, cached.getHits());
+	}
+
+}
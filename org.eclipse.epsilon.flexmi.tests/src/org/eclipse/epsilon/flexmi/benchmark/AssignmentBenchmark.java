@@ -0,0 +1,121 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.epsilon.flexmi.DefaultStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.HungarianAlgorithm;
+import org.eclipse.epsilon.flexmi.IntegerHungarianAlgorithm;
+import org.eclipse.epsilon.flexmi.SmallAssignmentSolver;
+import org.eclipse.epsilon.flexmi.StringSimilarityProvider;
+
+/**
+ * Compares the speed of the {@link SmallAssignmentSolver} and the {@link
+ * IntegerHungarianAlgorithm} with the {@link HungarianAlgorithm} on
+ * matrices shaped like the ones of attribute assignment in FlexmiResource
+ * (1-6 attributes by 3-30 features, with costs 1/similarity, or 2 for no
+ * similarity)
+ */
+public class AssignmentBenchmark {
+	
+	protected static final String[] WORDS = FuzzyNameIndexBenchmark.WORDS;
+	
+	public static void main(String[] args) {
+		int matrices = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		int[][][] similarityMatrices = generateSimilarityMatrices(matrices, new Random(42));
+		double[][][] costMatrices = new double[matrices][][];
+		for (int m = 0; m < matrices; m++) costMatrices[m] = toCostMatrix(similarityMatrices[m]);
+		SmallAssignmentSolver solver = new SmallAssignmentSolver();
+		IntegerHungarianAlgorithm integerHungarian = new IntegerHungarianAlgorithm();
+		int[] integerAssignment = new int[64];
+		
+		for (int i = 0; i < iterations; i++) {
+			int checksum = 0;
+			long start = System.nanoTime();
+			for (double[][] costMatrix : costMatrices) {
+				checksum += new HungarianAlgorithm(costMatrix).execute()[0];
+			}
+			long hungarian = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int[][] similarityMatrix : similarityMatrices) {
+				integerHungarian.resetToInverseSimilarities(similarityMatrix);
+				integerHungarian.execute(integerAssignment);
+				checksum += integerAssignment[0];
+			}
+			long integer = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int m = 0; m < matrices; m++) {
+				// As in FlexmiResource.getAssignment
+				int[] assignment = solver.executeOnInverseSimilarities(similarityMatrices[m]);
+				if (assignment == null && !solver.isTied()) {
+					integerHungarian.resetToInverseSimilarities(similarityMatrices[m]);
+					integerHungarian.execute(integerAssignment);
+					if (integerHungarian.hasUniqueAssignment()) assignment = integerAssignment;
+				}
+				if (assignment == null) assignment = new HungarianAlgorithm(costMatrices[m]).execute();
+				checksum += assignment[0];
+			}
+			long small = System.nanoTime() - start;
+			
+			if (checksum < 0) System.out.println(checksum);
+			System.out.println("Iteration " + i + ": hungarian " + hungarian / matrices + "ns/matrix, integer hungarian " + integer / matrices +
+					"ns/matrix, small solver with fallbacks " + small / matrices + "ns/matrix");
+		}
+	}
+	
+	public static double[][] toCostMatrix(int[][] similarityMatrix) {
+		double[][] costMatrix = new double[similarityMatrix.length][similarityMatrix[0].length];
+		for (int i = 0; i < costMatrix.length; i++) {
+			for (int j = 0; j < costMatrix[i].length; j++) {
+				int similarity = similarityMatrix[i][j];
+				costMatrix[i][j] = similarity != 0 ? 1 / (double) similarity : 2;
+			}
+		}
+		return costMatrix;
+	}
+	
+	/**
+	 * Generates the similarities of the attributes of elements that set
+	 * some of the features of a class, by their names or by prefixes of them
+	 */
+	public static int[][][] generateSimilarityMatrices(int count, Random random) {
+		StringSimilarityProvider similarityProvider = new DefaultStringSimilarityProvider();
+		int[][][] similarityMatrices = new int[count][][];
+		for (int m = 0; m < count; m++) {
+			// Feature names are unique within a class
+			int features = 3 + random.nextInt(28);
+			Set<String> names = new LinkedHashSet<String>();
+			while (names.size() < features) {
+				String name = WORDS[random.nextInt(WORDS.length)];
+				if (random.nextBoolean()) name += WORDS[random.nextInt(WORDS.length)];
+				names.add(name);
+			}
+			String[] featureNames = names.toArray(new String[features]);
+			
+			// Attributes set different features, and
+			// abbreviate them to three or more characters
+			int attributes = Math.min(features, 1 + random.nextInt(6));
+			List<String> shuffledNames = new ArrayList<String>(names);
+			Collections.shuffle(shuffledNames, random);
+			int[][] similarityMatrix = new int[attributes][features];
+			for (int i = 0; i < attributes; i++) {
+				String attributeName = shuffledNames.get(i);
+				if (random.nextBoolean()) attributeName = attributeName.substring(0, Math.min(attributeName.length(), 3 + random.nextInt(attributeName.length())));
+				for (int j = 0; j < features; j++) {
+					similarityMatrix[i][j] = similarityProvider.getSimilarity(attributeName, featureNames[j]);
+				}
+			}
+			similarityMatrices[m] = similarityMatrix;
+		}
+		return similarityMatrices;
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.AssignmentCalculator;
+import org.eclipse.epsilon.flexmi.AssignmentCalculator.AssignmentScorer;
+import org.eclipse.epsilon.flexmi.ExhaustiveAssignmentCalculator;
+
+/**
+ * Compares the speed of the {@link AssignmentCalculator} with the
+ * exhaustive search that it replaced as the lists grow
+ */
+public class AssignmentCalculatorBenchmark {
+	
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		AssignmentCalculator calculator = new AssignmentCalculator();
+		ExhaustiveAssignmentCalculator exhaustive = new ExhaustiveAssignmentCalculator();
+		
+		for (int size : new int[] {4, 6, 8, 9, 50, 200}) {
+			Random sizeRandom = new Random(size);
+			List<Integer> lefts = range(size);
+			List<Integer> rights = range(size);
+			MatrixScorer scorer = new MatrixScorer(size, size, 1000, sizeRandom);
+			int repetitions = Math.max(1, 20000 / (size * size * size));
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				for (int r = 0; r < repetitions; r++) calculator.calculateAssignment(lefts, rights, scorer);
+				long polynomial = (System.nanoTime() - start) / repetitions;
+				
+				String exhaustiveTime = "skipped";
+				if (size <= 9) {
+					start = System.nanoTime();
+					for (int r = 0; r < repetitions; r++) exhaustive.calculateAssignment(lefts, rights, scorer);
+					exhaustiveTime = (System.nanoTime() - start) / repetitions / 1000 + "us";
+				}
+				System.out.println(size + "x" + size + " iteration " + i + ": polynomial " + polynomial / 1000 + "us, exhaustive " + exhaustiveTime);
+			}
+		}
+	}
+	
+	public static List<Integer> range(int size) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) list.add(i);
+		return list;
+	}
+	
+	/**
+	 * Scores pairs of indices from a random matrix of
+	 * multiples of 1/resolution between -1 and 1
+	 */
+	public static class MatrixScorer implements AssignmentScorer {
+		
+		protected float[][] scores;
+		
+		public MatrixScorer(int lefts, int rights, int resolution, Random random) {
+			scores = new float[lefts][rights];
+			for (float[] row : scores) {
+				for (int j = 0; j < rights; j++) row[j] = (random.nextInt(2 * resolution + 1) - resolution) / (float) resolution;
+			}
+		}
+		
+		@Override
+		public float score(Object left, Object right) {
+			return scores[(Integer) left][(Integer) right];
+		}
+		
+		@Override
+		public String toString() {
+			return Arrays.deepToString(scores);
+		}
+	}
+
+}
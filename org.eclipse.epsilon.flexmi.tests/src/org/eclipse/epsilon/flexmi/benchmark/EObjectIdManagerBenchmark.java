@@ -0,0 +1,70 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.epsilon.flexmi.EObjectIdManager;
+
+/**
+ * Registers growing numbers of named EObjects with an {@link
+ * EObjectIdManager} the way FlexmiResource does (under an id and a name),
+ * sequentially and from several threads, to show that
+ * the time per EObject stays flat.
+ */
+public class EObjectIdManagerBenchmark {
+	
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		
+		for (int size : new int[] {50000, 100000, 250000, 500000}) {
+			EObject[] eObjects = new EObject[size];
+			String[] names = new String[size];
+			for (int i = 0; i < size; i++) {
+				eObjects[i] = EcoreFactory.eINSTANCE.createEClass();
+				names[i] = "element" + i;
+			}
+			
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				EObjectIdManager manager = new EObjectIdManager(size);
+				fill(manager, eObjects, names, 0, 1);
+				long sequential = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				manager = new EObjectIdManager(size);
+				fillConcurrently(manager, eObjects, names, threads);
+				long concurrent = System.nanoTime() - start;
+				
+				System.out.println(size + " elements, iteration " + i + ": sequential " + sequential / size + "ns/element, " +
+						threads + " threads " + concurrent / size + "ns/element");
+			}
+		}
+	}
+	
+	public static void fill(EObjectIdManager manager, EObject[] eObjects, String[] names, int first, int step) {
+		for (int i = first; i < eObjects.length; i += step) {
+			manager.setEObjectId(eObjects[i], "id" + i);
+			manager.setEObjectId(eObjects[i], names[i]);
+		}
+	}
+	
+	public static void fillConcurrently(final EObjectIdManager manager, final EObject[] eObjects, final String[] names, final int threads) throws InterruptedException {
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					fill(manager, eObjects, names, first, threads);
+				}
+			};
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) worker.join();
+	}
+
+}
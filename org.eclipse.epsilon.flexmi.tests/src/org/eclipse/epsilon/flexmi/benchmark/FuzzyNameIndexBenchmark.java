@@ -0,0 +1,98 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.BoundedStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.DefaultStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.FuzzyNameIndex;
+
+/**
+ * Compares fuzzy matching through a {@link FuzzyNameIndex} with a linear
+ * scan over all candidates (as in FlexmiResource) for registries of
+ * different sizes
+ */
+public class FuzzyNameIndexBenchmark {
+	
+	protected static final String[] WORDS = {"abstract", "action", "activity", "attribute", "block", "class", "component",
+		"connector", "constraint", "data", "element", "entity", "event", "feature", "flow", "gateway", "interface", "item",
+		"link", "message", "model", "node", "object", "operation", "package", "parameter", "port", "property", "reference",
+		"region", "requirement", "resource", "role", "rule", "signal", "state", "task", "transition", "type", "value", "view"};
+	
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		BoundedStringSimilarityProvider similarityProvider = new DefaultStringSimilarityProvider();
+		
+		for (int classes : new int[] {100, 1000, 10000}) {
+			Random random = new Random(classes);
+			String[] names = generateNames(classes, random);
+			String[] queryNames = generateQueries(names, queries, random);
+			FuzzyNameIndex index = new FuzzyNameIndex(names);
+			
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				int checksum = 0;
+				for (String query : queryNames) checksum += linearScan(names, query, similarityProvider);
+				long linear = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				for (String query : queryNames) checksum -= index.getBestMatch(query, similarityProvider, 1);
+				long indexed = System.nanoTime() - start;
+				
+				System.out.println(classes + " classes, iteration " + i + ": linear " + linear / queries / 1000 + "us/query, indexed " +
+						indexed / queries / 1000 + "us/query" + (checksum != 0 ? " (checksum mismatch)" : ""));
+			}
+		}
+	}
+	
+	/**
+	 * The scan of FlexmiResource.eNamedElementForName
+	 */
+	public static int linearScan(String[] names, String name, BoundedStringSimilarityProvider similarityProvider) {
+		int minimumSimilarity = 1;
+		int bestMatch = -1;
+		for (int i = 0; i < names.length; i++) {
+			int similarity = similarityProvider.getSimilarity(names[i], name, minimumSimilarity);
+			if (similarity >= minimumSimilarity) {
+				minimumSimilarity = similarity + 1;
+				bestMatch = i;
+			}
+		}
+		return bestMatch;
+	}
+	
+	public static String[] generateNames(int count, Random random) {
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int words = 1 + random.nextInt(3);
+			for (int w = 0; w < words; w++) sb.append(WORDS[random.nextInt(WORDS.length)]);
+			if (random.nextInt(4) == 0) sb.append(i);
+			names[i] = sb.toString();
+		}
+		return names;
+	}
+	
+	/**
+	 * Generates abbreviations, misspellings and
+	 * extensions of names
+	 */
+	public static String[] generateQueries(String[] names, int count, Random random) {
+		String[] queries = new String[count];
+		for (int i = 0; i < count; i++) {
+			String name = names[random.nextInt(names.length)];
+			switch (random.nextInt(4)) {
+				case 0: queries[i] = name.substring(0, 1 + random.nextInt(name.length())); break;
+				case 1: {
+					int position = random.nextInt(name.length());
+					queries[i] = name.substring(0, position) + (char) ('a' + random.nextInt(26)) + name.substring(position + 1);
+					break;
+				}
+				case 2: queries[i] = name + WORDS[random.nextInt(WORDS.length)]; break;
+				default: queries[i] = WORDS[random.nextInt(WORDS.length)].substring(0, 3) + (char) ('a' + random.nextInt(26));
+			}
+		}
+		return queries;
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+
+import org.eclipse.epsilon.flexmi.xml.Location;
+import org.eclipse.epsilon.flexmi.xml.ParserContext;
+import org.eclipse.epsilon.flexmi.xml.ParserContextPool;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.eclipse.epsilon.flexmi.xml.SAXBackend;
+import org.eclipse.epsilon.flexmi.xml.XMLElement;
+import org.eclipse.epsilon.flexmi.xml.TokenizerBackend;
+import org.eclipse.epsilon.flexmi.xml.UserDataLocationRecorder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.InputSource;
+
+/**
+ * Times the DOM path with locations recorded as user data through mutation
+ * events (the baseline) and in positional arrays, and the streaming backends.
+ */
+public class PseudoSAXParserBenchmark {
+	
+	public static void main(String[] args) throws Exception {
+		int elements = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		byte[] document = generateDocument(elements);
+		byte[] smallDocument = generateDocument(40);
+		int smallParses = 2000;
+		
+		System.out.println("Document: " + elements + " elements, " + document.length / 1024 + " KB");
+		
+		for (int i = 0; i < iterations; i++) {
+			long userData = timeUserDataParsing(document, 1);
+			long dom = timeDocumentParsing(document, 1);
+			long sax = timeParsing(new PseudoSAXParser(new SAXBackend()), document, 1);
+			long tokenizer = timeParsing(new PseudoSAXParser(new TokenizerBackend()), document, 1);
+			System.out.println("Iteration " + i + ": DOM (user data) " + userData + "ms, DOM " + dom + "ms, SAX " + sax + "ms, tokenizer " + tokenizer + "ms");
+		}
+		
+		System.out.println("Small document: " + smallDocument.length + " bytes, " + smallParses + " parses");
+		
+		for (int i = 0; i < iterations; i++) {
+			long userData = timeUserDataParsing(smallDocument, smallParses);
+			long dom = timeDocumentParsing(smallDocument, smallParses);
+			long sax = timeParsing(new PseudoSAXParser(new SAXBackend()), smallDocument, smallParses);
+			long tokenizer = timeParsing(new PseudoSAXParser(new TokenizerBackend()), smallDocument, smallParses);
+			System.out.println("Iteration " + i + ": DOM (user data) " + userData + "ms, DOM " + dom + "ms, SAX " + sax + "ms, tokenizer " + tokenizer + "ms");
+		}
+	}
+	
+	protected static long timeDocumentParsing(byte[] document, int parses) throws Exception {
+		PseudoSAXParser parser = new PseudoSAXParser();
+		long start = System.nanoTime();
+		for (int i = 0; i < parses; i++) {
+			parser.parseDocument(new ByteArrayInputStream(document), new CountingHandler());
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	protected static long timeUserDataParsing(byte[] document, int parses) throws Exception {
+		ParserContextPool contextPool = new ParserContextPool();
+		long start = System.nanoTime();
+		for (int i = 0; i < parses; i++) {
+			visitUserData(parseWithUserData(contextPool, new ByteArrayInputStream(document)), new CountingHandler());
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	/**
+	 * Builds the DOM of the input the way PseudoSAXParser did before
+	 * locations were recorded in arrays, but through the same pooled
+	 * JAXP objects, so that only the recording differs
+	 */
+	public static Document parseWithUserData(ParserContextPool contextPool, InputStream inputStream) throws Exception {
+		ParserContext context = contextPool.acquire();
+		try {
+			Document document = context.getDocumentBuilder().newDocument();
+			document.setStrictErrorChecking(false);
+			UserDataLocationRecorder locationRecorder = new UserDataLocationRecorder(context.getSAXParser().getXMLReader(), document);
+			context.getTransformer().transform(new SAXSource(locationRecorder, new InputSource(inputStream)), new DOMResult(document));
+			return document;
+		}
+		finally {
+			context.release();
+		}
+	}
+	
+	protected static void visitUserData(Node node, CountingHandler handler) {
+		if (node instanceof Element || node instanceof ProcessingInstruction) {
+			handler.lines += ((Location) node.getUserData(Location.ID)).getStartLine();
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			visitUserData(child, handler);
+		}
+	}
+	
+	protected static long timeParsing(PseudoSAXParser parser, byte[] document, int parses) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < parses; i++) {
+			parser.parse(new ByteArrayInputStream(document), new CountingHandler());
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	public static byte[] generateDocument(int elements) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\"?>\n<?nsuri http://messaging?>\n<sys>\n");
+		for (int i = 0; i < elements; i += 4) {
+			sb.append("\t<u name=\"user").append(i).append("\">\n");
+			sb.append("\t\t<box q=\"").append(i).append("\">\n");
+			sb.append("\t\t\t<msg from=\"user").append(i).append("\" subject=\"Hello\"/>\n");
+			sb.append("\t\t\t<body>Message ").append(i).append("</body>\n");
+			sb.append("\t\t</box>\n\t</u>\n");
+		}
+		sb.append("</sys>");
+		try {
+			return sb.toString().getBytes("UTF-8");
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public static class CountingHandler implements StreamingHandler {
+		
+		protected int lines = 0;
+		
+		@Override
+		public void startDocument() {}
+		
+		@Override
+		public void endDocument() {}
+		
+		@Override
+		public void startElement(XMLElement element) {
+			lines += element.getLocation().getStartLine();
+		}
+		
+		@Override
+		public void endElement(XMLElement element) {}
+		
+		@Override
+		public void processingInstruction(String target, String data, Location location) {}
+		
+		public int getLines() {
+			return lines;
+		}
+	}
+	
+}
@@ -0,0 +1,88 @@
+package org.eclipse.epsilon.flexmi.benchmark;
+
+import java.util.Random;
+
+import org.eclipse.epsilon.flexmi.BoundedStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.CachedStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.DefaultStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.ReferenceStringSimilarityProvider;
+import org.eclipse.epsilon.flexmi.StringSimilarityProvider;
+
+/**
+ * Compares the speed of the {@link DefaultStringSimilarityProvider} with
+ * the original, table-based implementation over random pairs of names
+ */
+public class StringSimilarityBenchmark {
+	
+	public static void main(String[] args) {
+		int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		Random random = new Random(42);
+		String[] firsts = new String[pairs];
+		String[] seconds = new String[pairs];
+		for (int i = 0; i < pairs; i++) {
+			firsts[i] = generateName(random);
+			seconds[i] = random.nextInt(8) == 0 ? firsts[i] + generateName(random) : generateName(random);
+		}
+		
+		BoundedStringSimilarityProvider provider = new DefaultStringSimilarityProvider();
+		StringSimilarityProvider reference = new ReferenceStringSimilarityProvider();
+		
+		// A cache that holds a quarter of the pairs, queried
+		// mostly for a small set of frequent pairs
+		CachedStringSimilarityProvider cached = new CachedStringSimilarityProvider(provider, pairs / 4);
+		String[] cachedFirsts = new String[pairs];
+		String[] cachedSeconds = new String[pairs];
+		for (int i = 0; i < pairs; i++) {
+			int pair = random.nextInt(4) == 0 ? random.nextInt(pairs) : random.nextInt(pairs / 16 + 1);
+			cachedFirsts[i] = firsts[pair];
+			cachedSeconds[i] = seconds[pair];
+		}
+		
+		for (int i = 0; i < iterations; i++) {
+			long tableTime = time(reference, firsts, seconds);
+			long rowTime = time(provider, firsts, seconds);
+			long boundedTime = time(provider, firsts, seconds, 6);
+			long cachedTime = time(cached, cachedFirsts, cachedSeconds);
+			long uncachedTime = time(provider, cachedFirsts, cachedSeconds);
+			System.out.println("Iteration " + i + ": table " + tableTime + "ms, single row " + rowTime + "ms, single row with minimum 6 " + boundedTime + "ms, " +
+					"skewed pairs " + uncachedTime + "ms uncached vs " + cachedTime + "ms cached");
+		}
+		System.out.println("Cache: " + cached);
+	}
+	
+	protected static long time(StringSimilarityProvider provider, String[] firsts, String[] seconds) {
+		long start = System.nanoTime();
+		int checksum = 0;
+		for (int i = 0; i < firsts.length; i++) {
+			checksum += provider.getSimilarity(firsts[i], seconds[i]);
+		}
+		if (checksum < 0) System.out.println(checksum);
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	protected static long time(BoundedStringSimilarityProvider provider, String[] firsts, String[] seconds, int minimum) {
+		long start = System.nanoTime();
+		int checksum = 0;
+		for (int i = 0; i < firsts.length; i++) {
+			checksum += provider.getSimilarity(firsts[i], seconds[i], minimum);
+		}
+		if (checksum < 0) System.out.println(checksum);
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	/**
+	 * Generates names over a small alphabet (so that they
+	 * share substrings), including some empty ones
+	 */
+	public static String generateName(Random random) {
+		int length = random.nextInt(20);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(random.nextBoolean() ? 4 : 26)));
+		}
+		return sb.toString();
+	}
+
+}
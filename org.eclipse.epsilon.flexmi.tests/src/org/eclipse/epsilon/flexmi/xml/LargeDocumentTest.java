@@ -0,0 +1,121 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.junit.Test;
+
+/**
+ * Parses very deep and very wide documents with each parser path on a
+ * thread with a small stack, so that anything that recurses per nesting
+ * level or is quadratic in the number of siblings shows up as a failure
+ * or a timeout.
+ */
+public class LargeDocumentTest {
+	
+	protected static final int ELEMENTS = 100000;
+	protected static final long STACK_SIZE = 512 * 1024;
+	
+	@Test
+	public void testDeepDocument() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < ELEMENTS; i++) sb.append("<e>");
+		sb.append("text");
+		for (int i = 0; i < ELEMENTS; i++) sb.append("</e>");
+		byte[] document = sb.toString().getBytes("UTF-8");
+		
+		for (PseudoSAXParser parser : getParsers()) {
+			CountingHandler handler = parse(parser, document);
+			assertEquals(ELEMENTS, handler.starts);
+			assertEquals(ELEMENTS, handler.ends);
+			assertEquals(ELEMENTS, handler.maxDepth);
+			assertEquals("text", handler.lastText);
+		}
+	}
+	
+	@Test
+	public void testWideDocument() throws Exception {
+		StringBuilder sb = new StringBuilder("<root>\n");
+		for (int i = 0; i < ELEMENTS; i++) sb.append("\t<e name=\"e").append(i).append("\">").append(i).append("</e>\n");
+		sb.append("</root>");
+		byte[] document = sb.toString().getBytes("UTF-8");
+		
+		for (PseudoSAXParser parser : getParsers()) {
+			CountingHandler handler = parse(parser, document);
+			assertEquals(ELEMENTS + 1, handler.starts);
+			assertEquals(ELEMENTS + 1, handler.ends);
+			assertEquals(2, handler.maxDepth);
+			assertEquals(String.valueOf(ELEMENTS - 1), handler.lastText);
+			assertEquals(ELEMENTS + 1, handler.lastLine);
+		}
+	}
+	
+	protected List<PseudoSAXParser> getParsers() {
+		List<PseudoSAXParser> parsers = new ArrayList<PseudoSAXParser>();
+		parsers.add(null);
+		parsers.add(new PseudoSAXParser(new SAXBackend()));
+		parsers.add(new PseudoSAXParser(new TokenizerBackend()));
+		parsers.add(new PseudoSAXParser(new PipelinedBackend(new TokenizerBackend())));
+		return parsers;
+	}
+	
+	/**
+	 * Parses the document on a thread with a small stack; a null parser
+	 * stands for a DOM parse
+	 */
+	protected CountingHandler parse(final PseudoSAXParser parser, final byte[] document) throws Exception {
+		final CountingHandler handler = new CountingHandler();
+		final Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					if (parser == null) new PseudoSAXParser().parseDocument(new ByteArrayInputStream(document), handler);
+					else parser.parse(new ByteArrayInputStream(document), handler);
+				}
+				catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		}, "Large document parser", STACK_SIZE);
+		thread.start();
+		thread.join();
+		if (failure[0] instanceof Exception) throw (Exception) failure[0];
+		if (failure[0] != null) throw new AssertionError(failure[0]);
+		return handler;
+	}
+	
+	protected static class CountingHandler implements StreamingHandler {
+		
+		protected int starts, ends, depth, maxDepth, lastLine;
+		protected String lastText;
+		
+		@Override
+		public void startDocument() {}
+		
+		@Override
+		public void endDocument() {}
+		
+		@Override
+		public void startElement(XMLElement element) {
+			starts++;
+			maxDepth = Math.max(maxDepth, ++depth);
+			if (element.getText() != null) lastText = element.getText();
+		}
+		
+		@Override
+		public void endElement(XMLElement element) {
+			ends++;
+			if (--depth > 0) lastLine = element.getLocation().getStartLine();
+		}
+		
+		@Override
+		public void processingInstruction(String target, String data, Location location) {}
+	}
+	
+}
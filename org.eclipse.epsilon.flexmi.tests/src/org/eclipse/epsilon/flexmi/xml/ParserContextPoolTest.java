@@ -0,0 +1,69 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.epsilon.flexmi.ParserContextPoolAdapter;
+import org.junit.Test;
+
+public class ParserContextPoolTest {
+	
+	@Test
+	public void testReleasedContextsAreReused() throws Exception {
+		ParserContextPool pool = new ParserContextPool();
+		ParserContext context = pool.acquire();
+		context.getSAXParser();
+		context.release();
+		assertSame(context, pool.acquire());
+	}
+	
+	@Test
+	public void testNestedParsesGetDifferentContexts() throws Exception {
+		ParserContextPool pool = new ParserContextPool();
+		ParserContext outer = pool.acquire();
+		ParserContext inner = pool.acquire();
+		assertNotSame(outer, inner);
+		inner.release();
+		outer.release();
+	}
+	
+	@Test
+	public void testSharedPoolIsTheDefault() throws Exception {
+		ParserContextPool sharedPool = ParserContextPool.getSharedPool();
+		assertSame(sharedPool, new SAXBackend().contextPool);
+		assertSame(sharedPool, new TokenizerBackend().contextPool);
+		assertSame(sharedPool, new PseudoSAXParser().contextPool);
+		assertSame(sharedPool, ParserContextPoolAdapter.getPool(null));
+		
+		// Resource sets use the shared pool unless they are given their own
+		ResourceSet resourceSet = new ResourceSetImpl();
+		assertSame(sharedPool, ParserContextPoolAdapter.getPool(resourceSet));
+		assertSame(sharedPool, ParserContextPoolAdapter.getPool(new ResourceSetImpl()));
+		ParserContextPoolAdapter adapter = new ParserContextPoolAdapter();
+		resourceSet.eAdapters().add(adapter);
+		assertSame(adapter.getPool(), ParserContextPoolAdapter.getPool(resourceSet));
+		assertNotSame(sharedPool, adapter.getPool());
+	}
+	
+	@Test
+	public void testIdleContextsAreBounded() throws Exception {
+		ParserContextPool pool = new ParserContextPool(2);
+		ParserContext[] contexts = {pool.acquire(), pool.acquire(), pool.acquire()};
+		for (ParserContext context : contexts) context.release();
+		assertSame(contexts[1], pool.acquire());
+		assertSame(contexts[0], pool.acquire());
+		assertNotSame(contexts[2], pool.acquire());
+	}
+	
+	@Test
+	public void testClearedPoolsCreateNewContexts() throws Exception {
+		ParserContextPool pool = new ParserContextPool();
+		ParserContext context = pool.acquire();
+		context.release();
+		pool.clear();
+		assertNotSame(context, pool.acquire());
+	}
+	
+}
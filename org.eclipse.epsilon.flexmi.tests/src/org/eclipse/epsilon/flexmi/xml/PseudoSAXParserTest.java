@@ -0,0 +1,270 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.eclipse.epsilon.flexmi.benchmark.PseudoSAXParserBenchmark;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.SAXException;
+
+public class PseudoSAXParserTest {
+	
+	protected static final String DOCUMENT = "<?xml version=\"1.0\"?>\n" +
+			"<?nsuri http://messaging?>\n" +
+			"<sys name=\"s\">\n" +
+			"\t<u name=\"a &amp; b\" age=\"3\">\n" +
+			"\t\t<box/>\n" +
+			"\t\t<?import other.flexmi?>\n" +
+			"\t\t<msg subject='Hi'>x<![CDATA[<y>]]>z</msg>\n" +
+			"\t\t<body><![CDATA[only]]></body>\n" +
+			"\t\t<note>x<!-- comment -->y</note>\n" +
+			"\t\t<text>a &lt; b</text>\n" +
+			"\t</u>\n" +
+			"</sys>";
+	
+	@Test
+	public void testBackendsAgreeWithDocument() throws Exception {
+		String expected = trace(null);
+		assertEquals(expected, trace(new SAXBackend()));
+		assertEquals(expected, trace(new TokenizerBackend()));
+		assertEquals(expected, trace(new PipelinedBackend(new SAXBackend())));
+		assertEquals(expected, trace(new PipelinedBackend(new TokenizerBackend(), 2, 1)));
+	}
+	
+	@Test
+	public void testPipelineWaitsForTheProducerWhenTheHandlerFails() throws Exception {
+		StringBuilder document = new StringBuilder("<a>");
+		for (int i = 0; i < 10000; i++) document.append("<b/>");
+		document.append("</a>");
+		
+		final boolean[] producerFinished = new boolean[1];
+		PipelinedBackend backend = new PipelinedBackend(new TokenizerBackend() {
+			
+			@Override
+			public void parse(InputStream inputStream, StreamingHandler handler) throws SAXException, IOException {
+				try {
+					super.parse(inputStream, handler);
+				}
+				finally {
+					producerFinished[0] = true;
+				}
+			}
+		}, 2, 1);
+		
+		try {
+			new PseudoSAXParser(backend).parse(new ByteArrayInputStream(document.toString().getBytes("UTF-8")), new TracingHandler(new StringBuilder()) {
+				
+				@Override
+				public void startElement(XMLElement element) {
+					if (element.getName().equals("b")) throw new IllegalStateException("Handler failed");
+				}
+			});
+			fail();
+		}
+		catch (IllegalStateException ex) {
+			assertEquals("Handler failed", ex.getMessage());
+		}
+		assertTrue(producerFinished[0]);
+		assertTrue(backend.getStatistics().events < 10000);
+	}
+	
+	@Test
+	public void testCharacterDataIsJoined() throws Exception {
+		for (PseudoSAXParser parser : getParsers()) {
+			List<XMLElement> elements = parse(parser);
+			assertEquals("x<y>z", getElement(elements, "msg").getText());
+			assertEquals("only", getElement(elements, "body").getText());
+			assertEquals("a < b", getElement(elements, "text").getText());
+			assertNull(getElement(elements, "note").getText());
+			assertNull(getElement(elements, "box").getText());
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testDocumentHandler() throws Exception {
+		final List<String> events = new ArrayList<String>();
+		new PseudoSAXParser().parse(getInputStream(), new PseudoSAXParser.Handler() {
+			
+			@Override
+			public void startDocument(Document document) {
+				events.add("startDocument");
+			}
+			
+			@Override
+			public void endDocument(Document document) {
+				events.add("endDocument");
+			}
+			
+			@Override
+			public void startElement(Element element) {
+				events.add("<" + element.getNodeName() + " " + element.getUserData(Location.ID));
+			}
+			
+			@Override
+			public void endElement(Element element) {
+				events.add("</" + element.getNodeName());
+			}
+			
+			@Override
+			public void processingInstruction(ProcessingInstruction processingInstruction) {
+				events.add("?" + processingInstruction.getTarget() + " " + ((Node) processingInstruction).getUserData(Location.ID));
+			}
+		});
+		
+		assertEquals(18, events.size());
+		assertEquals("startDocument", events.get(0));
+		assertEquals("?nsuri [line 2:27 to line 2:27]", events.get(1));
+		assertEquals("<sys [line 3:15 to line 12:7]", events.get(2));
+		assertEquals("<box [line 5:9 to line 5:9]", events.get(4));
+		assertEquals("</box", events.get(5));
+		assertEquals("?import [line 6:26 to line 6:26]", events.get(6));
+		assertEquals("<msg [line 7:21 to line 7:44]", events.get(7));
+		assertEquals("</sys", events.get(16));
+		assertEquals("endDocument", events.get(17));
+	}
+	
+	@Test
+	public void testLocationsAgreeWithUserDataRecorder() throws Exception {
+		final List<Location> locations = new ArrayList<Location>();
+		new PseudoSAXParser().parseDocument(getInputStream(), new TracingHandler(new StringBuilder()) {
+			
+			@Override
+			public void startElement(XMLElement element) {
+				locations.add(element.getLocation());
+			}
+			
+			@Override
+			public void processingInstruction(String target, String data, Location location) {
+				locations.add(location);
+			}
+		});
+		
+		List<Location> expected = new ArrayList<Location>();
+		collectUserData(PseudoSAXParserBenchmark.parseWithUserData(new ParserContextPool(), getInputStream()), expected);
+		assertEquals(expected.toString(), locations.toString());
+	}
+	
+	protected void collectUserData(Node node, List<Location> locations) {
+		if (node instanceof Element || node instanceof ProcessingInstruction) {
+			locations.add((Location) node.getUserData(Location.ID));
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			collectUserData(child, locations);
+		}
+	}
+	
+	protected List<PseudoSAXParser> getParsers() {
+		List<PseudoSAXParser> parsers = new ArrayList<PseudoSAXParser>();
+		parsers.add(new PseudoSAXParser(new SAXBackend()));
+		parsers.add(new PseudoSAXParser(new TokenizerBackend()));
+		parsers.add(new PseudoSAXParser(new PipelinedBackend(new TokenizerBackend())));
+		parsers.add(new PseudoSAXParser() {
+			
+			@Override
+			public void parse(InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, IOException {
+				try {
+					parseDocument(inputStream, handler);
+				}
+				catch (TransformerException ex) {
+					throw new SAXException(ex);
+				}
+			}
+		});
+		return parsers;
+	}
+	
+	protected List<XMLElement> parse(PseudoSAXParser parser) throws Exception {
+		final List<XMLElement> elements = new ArrayList<XMLElement>();
+		parser.parse(getInputStream(), new TracingHandler(new StringBuilder()) {
+			
+			@Override
+			public void startElement(XMLElement element) {
+				elements.add(element);
+			}
+		});
+		return elements;
+	}
+	
+	protected XMLElement getElement(List<XMLElement> elements, String name) {
+		for (XMLElement element : elements) {
+			if (element.getName().equals(name)) return element;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the events of the document as reported through the backend,
+	 * or through a DOM if the backend is null
+	 */
+	protected String trace(PseudoSAXParser.Backend backend) throws Exception {
+		StringBuilder trace = new StringBuilder();
+		TracingHandler handler = new TracingHandler(trace);
+		if (backend == null) new PseudoSAXParser().parseDocument(getInputStream(), handler);
+		else new PseudoSAXParser(backend).parse(getInputStream(), handler);
+		return trace.toString();
+	}
+	
+	protected InputStream getInputStream() throws Exception {
+		return new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"));
+	}
+	
+	protected static class TracingHandler implements StreamingHandler {
+		
+		protected StringBuilder trace;
+		
+		public TracingHandler(StringBuilder trace) {
+			this.trace = trace;
+		}
+		
+		@Override
+		public void startDocument() {
+			trace.append("startDocument\n");
+		}
+		
+		@Override
+		public void endDocument() {
+			trace.append("endDocument\n");
+		}
+		
+		@Override
+		public void startElement(XMLElement element) {
+			TreeMap<String, String> attributes = new TreeMap<String, String>();
+			for (int i = 0; i < element.getAttributeCount(); i++) {
+				attributes.put(element.getAttributeName(i), element.getAttributeValue(i));
+				assertEquals(i, element.getAttributeIndex(element.getAttributeName(i)));
+			}
+			Location location = element.getLocation();
+			trace.append("<").append(element.getName()).append(" ").append(attributes).append(" ").append(element.getText());
+			trace.append(" ").append(location.getStartLine()).append(":").append(location.getStartColumn()).append("\n");
+		}
+		
+		@Override
+		public void endElement(XMLElement element) {
+			trace.append("</").append(element.getName()).append(" ").append(element.getLocation()).append("\n");
+		}
+		
+		@Override
+		public void processingInstruction(String target, String data, Location location) {
+			trace.append("?").append(target).append(" ").append(data).append(" ").append(location).append("\n");
+		}
+	}
+
+}
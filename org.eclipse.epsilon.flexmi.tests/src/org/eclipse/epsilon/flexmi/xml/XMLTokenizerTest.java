@@ -0,0 +1,130 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.epsilon.flexmi.xml.XMLTokenizer.TokenizedElement;
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+
+public class XMLTokenizerTest {
+	
+	@Test
+	public void testValuesAreDecodedLazily() throws Exception {
+		final List<XMLElement> elements = new ArrayList<XMLElement>();
+		parse("<a x=\"1\" y=\"a &amp; b\"><b z=\"2\"/></a>".getBytes("UTF-8"), elements);
+		
+		TokenizedElement a = (TokenizedElement) elements.get(0);
+		TokenizedElement b = (TokenizedElement) elements.get(1);
+		assertNull(a.attributeValues[0]);
+		assertNull(a.attributeValues[1]);
+		assertNull(b.attributeValues[0]);
+		assertEquals("1", a.getAttributeValue(a.getAttributeIndex("x")));
+		assertEquals("a & b", a.getAttributeValue(a.getAttributeIndex("y")));
+		assertEquals("2", b.getAttributeValue(0));
+		assertSame(b.getAttributeValue(0), b.getAttributeValue(0));
+	}
+	
+	@Test
+	public void testUnsupportedEncoding() throws Exception {
+		try {
+			parse("<?xml version=\"1.0\" encoding=\"no-such-encoding\"?>\n<a/>".getBytes("UTF-8"), new ArrayList<XMLElement>());
+			fail();
+		}
+		catch (SAXParseException ex) {
+			assertEquals(1, ex.getLineNumber());
+		}
+	}
+	
+	@Test
+	public void testMalformedInput() throws Exception {
+		byte[] prefix = "<a>\n  <b name=\"".getBytes("UTF-8");
+		byte[] bytes = new byte[prefix.length + 5];
+		System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+		bytes[prefix.length] = (byte) 0xC3;
+		bytes[prefix.length + 1] = (byte) '"';
+		bytes[prefix.length + 2] = (byte) '/';
+		bytes[prefix.length + 3] = (byte) '>';
+		bytes[prefix.length + 4] = (byte) '\n';
+		try {
+			parse(bytes, new ArrayList<XMLElement>());
+			fail();
+		}
+		catch (SAXParseException ex) {
+			assertEquals(2, ex.getLineNumber());
+			assertEquals(12, ex.getColumnNumber());
+		}
+	}
+	
+	@Test
+	public void testInvalidCharacterReferences() throws Exception {
+		String[] documents = {"<a x=\"&#0;\"/>", "<a>&#x1;</a>", "<a>&#xFFFE;</a>", "<a>&#xD800;</a>", "<a>&#9;&#x10FFFF;</a>"};
+		for (String document : documents) {
+			assertEquals(document, getError(new SAXBackend(), document), getError(new TokenizerBackend(), document));
+		}
+		assertNull(getError(new TokenizerBackend(), "<a>&#9;&#x10FFFF;</a>"));
+	}
+	
+	@Test
+	public void testStreamsAreDecodedInChunks() throws Exception {
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<a>\n");
+		for (int i = 0; i < 5000; i++) document.append("\t<b n=\"\u00e9\u4e2d\ud83d\ude00").append(i).append("\"/>\n");
+		document.append("</a>");
+		byte[] bytes = document.toString().getBytes("UTF-8");
+		
+		final List<String> values = new ArrayList<String>();
+		// Short reads split multi-byte characters between chunks
+		new XMLTokenizer().parse(new ByteArrayInputStream(bytes) {
+			
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 7));
+			}
+		}, new PseudoSAXParserTest.TracingHandler(new StringBuilder()) {
+			
+			@Override
+			public void startElement(XMLElement element) {
+				if (element.getAttributeCount() > 0) values.add(element.getAttributeValue(0));
+			}
+		});
+		assertEquals(5000, values.size());
+		assertEquals("\u00e9\u4e2d\ud83d\ude004999", values.get(4999));
+		
+		bytes[bytes.length - 20] = (byte) 0xC3;
+		bytes[bytes.length - 19] = (byte) '"';
+		try {
+			new XMLTokenizer().parse(new ByteArrayInputStream(bytes), new PseudoSAXParserTest.TracingHandler(new StringBuilder()));
+			fail();
+		}
+		catch (SAXParseException ex) {
+			assertEquals(5002, ex.getLineNumber());
+		}
+	}
+	
+	protected String getError(PseudoSAXParser.Backend backend, String document) throws Exception {
+		try {
+			backend.parse(new ByteArrayInputStream(document.getBytes("UTF-8")), new PseudoSAXParserTest.TracingHandler(new StringBuilder()));
+			return null;
+		}
+		catch (SAXParseException ex) {
+			return ex.getMessage() + " " + ex.getLineNumber() + ":" + ex.getColumnNumber();
+		}
+	}
+	
+	protected void parse(byte[] bytes, final List<XMLElement> elements) throws Exception {
+		new XMLTokenizer().parse(bytes, 0, bytes.length, new PseudoSAXParserTest.TracingHandler(new StringBuilder()) {
+			
+			@Override
+			public void startElement(XMLElement element) {
+				elements.add(element);
+			}
+		});
+	}
+
+}
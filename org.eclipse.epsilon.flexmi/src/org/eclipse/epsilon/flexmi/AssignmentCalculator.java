@@ -3,9 +3,22 @@ package org.eclipse.epsilon.flexmi;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Assigns the items of a left list to distinct items of a right list so
+ * that the sum of the scores of the assigned pairs is maximal. As many
+ * left items as possible are assigned, in list order (left items beyond
+ * the size of the right list are never assigned), and pairs with negative
+ * scores are then dropped from the result.
+ * <p>
+ * The assignment is computed by the Hungarian algorithm with potentials
+ * in O(n^2 m) time, scoring each pair once. Where several assignments
+ * share the maximal score, the one that assigns the first left items to
+ * the earliest right items is returned, as with exhaustive enumeration.
+ */
 public class AssignmentCalculator {
 	
 	public static void main(String[] args) {
@@ -32,28 +45,28 @@ public class AssignmentCalculator {
 	}
 	
 	public Map<Object, Object> calculateAssignment(List<?> leftList, List<?> rightList, AssignmentScorer scorer) {
-		ArrayList<?> leftArrayList = toArrayList(leftList);
 		ArrayList<?> rightArrayList = toArrayList(rightList);
-		List<Assignment> bestAssignment = null;
-		float maxScore = Float.NEGATIVE_INFINITY;
+		int rights = rightArrayList.size();
+		int lefts = Math.min(leftList.size(), rights);
+		HashMap<Object, Object> map = new HashMap<Object, Object>();
+		if (lefts == 0) return map;
 		
-		for (List<Assignment> assignmentList : calculateAssignments(leftArrayList, rightArrayList)) {
-			float score = 0;
-			for (Assignment assignment : assignmentList) {
-				score += scorer.score(assignment.getLeft(), assignment.getRight());
-			}
-			if (score > maxScore) {
-				maxScore = score;
-				bestAssignment = assignmentList;
+		// Score the pairs row by row, walking the left list only once
+		Object[] leftItems = new Object[lefts];
+		float[][] scores = new float[lefts][rights];
+		Iterator<?> leftIterator = leftList.iterator();
+		for (int i = 0; i < lefts; i++) {
+			leftItems[i] = leftIterator.next();
+			float[] row = scores[i];
+			for (int j = 0; j < rights; j++) {
+				row[j] = scorer.score(leftItems[i], rightArrayList.get(j));
 			}
 		}
 		
-		HashMap<Object, Object> map = new HashMap<Object, Object>();
-		if (bestAssignment != null) {
-			for (Assignment assignment : bestAssignment) {
-				if (scorer.score(assignment.getLeft(), assignment.getRight()) >= 0) {
-					map.put(assignment.getLeft(), assignment.getRight());
-				}
+		int[] assignment = new Solver(scores).solve();
+		for (int i = 0; i < lefts; i++) {
+			if (scores[i][assignment[i]] >= 0) {
+				map.put(leftItems[i], rightArrayList.get(assignment[i]));
 			}
 		}
 		return map;
@@ -68,120 +81,180 @@ public class AssignmentCalculator {
 		}
 	}
 	
-	
-	private ArrayList<ArrayList<Assignment>> calculateAssignments(ArrayList<?> leftList, ArrayList<?> rightList) {
-		
-		Tree<Assignment> root = new Tree<Assignment>();
-		
-		calculateAssignments(root, leftList, rightList);
-		
-		ArrayList<ArrayList<Assignment>> assignmentLists = new ArrayList<ArrayList<Assignment>>();
-		
-		for (ArrayList<Tree<Assignment>> path : root.getAllPaths()) {
-			ArrayList<Assignment> assignmentList = new ArrayList<Assignment>();
-			for (Tree<Assignment> tree : path) {
-				assignmentList.add(tree.getValue());
-			}
-			assignmentLists.add(assignmentList);
-		}
-		
-		return assignmentLists;
-	}
-	
-	private void calculateAssignments(Tree<Assignment> parent, ArrayList<?> leftList, ArrayList<?> rightList) {
-		
-		if (leftList.size() == 0) return;
-		
-		Object firstLeft = leftList.get(0);
-		for (Object right : rightList) {
-			Tree<Assignment> tree = new Tree<Assignment>();
-			tree.setValue(new Assignment(firstLeft, right));
-			parent.getChildren().add(tree);
-			
-			ArrayList<Object> newLeftList = (ArrayList<Object>) leftList.clone();
-			newLeftList.remove(firstLeft);
-			ArrayList<Object> newRightList = (ArrayList<Object>) rightList.clone();
-			newRightList.remove(right);
-			
-			calculateAssignments(tree, newLeftList, newRightList);
-			
-		}
-	}
-	
 	public interface AssignmentScorer {
 		
 		public float score(Object left, Object right);
 		
 	}
 	
-	private class Tree<T> {
+	/**
+	 * Finds a maximum score assignment of all the rows of a score matrix to
+	 * distinct columns (rows <= columns), and then turns it into the first
+	 * one in row order among the maximum score assignments, by walking the
+	 * equality subgraph of the optimal potentials.
+	 */
+	private static class Solver {
 		
-		protected ArrayList<Tree<T>> children = new ArrayList<Tree<T>>();
-		protected T value;
+		protected float[][] scores;
+		protected int rows, cols;
+		protected double[] rowPotentials, colPotentials;
+		protected double tolerance;
+		// Columns are matched to the rows, or to one of the cols - rows dummy
+		// rows (cols - 1 - c for column c) that stand for the unused columns
+		protected int[] rowByCol, colByRow;
 		
-		public List<Tree<T>> getChildren() {
-			return children;
+		public Solver(float[][] scores) {
+			this.scores = scores;
+			this.rows = scores.length;
+			this.cols = scores[0].length;
 		}
 		
-		public ArrayList<ArrayList<Tree<T>>> getAllPaths() {
-			
-			ArrayList<ArrayList<Tree<T>>> allPaths = new ArrayList<ArrayList<Tree<T>>>();
-			
-			for (Tree<T> child : getChildren()) {
-				ArrayList<Tree<T>> path = new ArrayList<Tree<T>>();
-				path.add(child);
-				collectAllPaths(path, allPaths);
-			}
-			
-			return allPaths;
+		public int[] solve() {
+			minimiseCost();
+			makeFirst();
+			return Arrays.copyOf(colByRow, rows);
 		}
 		
-		public void collectAllPaths(ArrayList<Tree<T>> path, ArrayList<ArrayList<Tree<T>>> allPaths) {
-			Tree<T> lastElement = path.get(path.size()-1);
-			if (lastElement.getChildren().isEmpty()) {
-				allPaths.add(path);
+		/**
+		 * The Hungarian algorithm with potentials on costs -score, adding
+		 * one row at a time along a shortest augmenting path. Potentials are
+		 * kept so that every reduced cost is non-negative and is zero on the
+		 * matched pairs, and so that the potentials of unused columns are zero.
+		 */
+		protected void minimiseCost() {
+			double maxScore = 0;
+			for (float[] row : scores) {
+				for (float score : row) maxScore = Math.max(maxScore, Math.abs(score));
 			}
-			else {
-				for (Tree<T> child : lastElement.getChildren()) {
-					ArrayList<Tree<T>> newPath = new ArrayList<Tree<T>>((List) path.clone());
-					newPath.add(child);
-					collectAllPaths(newPath, allPaths);
-				}
+			tolerance = 1e-9 * (1 + maxScore) * cols;
+			
+			// Index 0 is the virtual column that the added row starts from
+			double[] u = new double[rows + 1], v = new double[cols + 1];
+			int[] rowByColumn = new int[cols + 1], previousColumn = new int[cols + 1];
+			double[] minReducedCost = new double[cols + 1];
+			boolean[] visited = new boolean[cols + 1];
+			for (int i = 1; i <= rows; i++) {
+				rowByColumn[0] = i;
+				int column = 0;
+				Arrays.fill(minReducedCost, Double.POSITIVE_INFINITY);
+				Arrays.fill(visited, false);
+				do {
+					visited[column] = true;
+					int row = rowByColumn[column];
+					double delta = Double.POSITIVE_INFINITY;
+					int nextColumn = 0;
+					for (int j = 1; j <= cols; j++) {
+						if (visited[j]) continue;
+						double reducedCost = -scores[row - 1][j - 1] - u[row] - v[j];
+						if (reducedCost < minReducedCost[j]) {
+							minReducedCost[j] = reducedCost;
+							previousColumn[j] = column;
+						}
+						if (minReducedCost[j] < delta) {
+							delta = minReducedCost[j];
+							nextColumn = j;
+						}
+					}
+					for (int j = 0; j <= cols; j++) {
+						if (visited[j]) {
+							u[rowByColumn[j]] += delta;
+							v[j] -= delta;
+						}
+						else {
+							minReducedCost[j] -= delta;
+						}
+					}
+					column = nextColumn;
+				} while (rowByColumn[column] != 0);
+				
+				// Flip the augmenting path
+				do {
+					int previous = previousColumn[column];
+					rowByColumn[column] = rowByColumn[previous];
+					column = previous;
+				} while (column != 0);
+			}
+			
+			rowPotentials = new double[rows];
+			colPotentials = new double[cols];
+			for (int i = 0; i < rows; i++) rowPotentials[i] = u[i + 1];
+			rowByCol = new int[cols];
+			colByRow = new int[cols];
+			int dummy = cols;
+			for (int j = 0; j < cols; j++) {
+				colPotentials[j] = v[j + 1];
+				rowByCol[j] = rowByColumn[j + 1] != 0 ? rowByColumn[j + 1] - 1 : --dummy;
+				colByRow[rowByCol[j]] = j;
 			}
 		}
 		
-		public void setValue(T value) {
-			this.value = value;
-		}
-		
-		public T getValue() {
-			return value;
-		}
-		
-	}
-	
-	private class Assignment {
-		
-		protected Object left;
-		protected Object right;
-		
-		public Assignment(Object left, Object right) {
-			this.left = left;
-			this.right = right;
-		}
-		
-		public Object getLeft() {
-			return left;
+		// An assignment is optimal iff it only uses tight pairs and leaves only
+		// columns with zero potential unused (complementary slackness)
+		protected boolean isTight(int row, int col) {
+			if (row >= rows) return colPotentials[col] >= -tolerance;
+			return -scores[row][col] - rowPotentials[row] - colPotentials[col] <= tolerance;
 		}
 		
-		public Object getRight() {
-			return right;
+		/**
+		 * Fixes the rows in order to the first column that they can take
+		 * in an optimal assignment, given the columns of the rows before
+		 */
+		protected void makeFirst() {
+			boolean[] fixedCols = new boolean[cols];
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					if (fixedCols[col] || !isTight(row, col)) continue;
+					if (colByRow[row] == col || reroute(row, col, fixedCols)) {
+						fixedCols[col] = true;
+						break;
+					}
+				}
+			}
 		}
 		
-		@Override
-		public String toString() {
-			return left + " -> " + right;
+		/**
+		 * Moves the row to the column if the other rows can make way for it
+		 * along an alternating cycle of tight pairs, through the rows (and
+		 * dummy rows) of unfixed columns, that ends at the column of the row
+		 */
+		protected boolean reroute(int row, int col, boolean[] fixedCols) {
+			int freedCol = colByRow[row];
+			int[] previousCol = new int[cols];
+			Arrays.fill(previousCol, -2);
+			int[] queue = new int[cols];
+			int head = 0, tail = 0;
+			previousCol[col] = -1;
+			queue[tail++] = col;
+			boolean dummyExpanded = false;
+			while (head < tail) {
+				int from = queue[head++];
+				int nextRow = rowByCol[from];
+				// Dummy rows are interchangeable
+				if (nextRow >= rows) {
+					if (dummyExpanded) continue;
+					dummyExpanded = true;
+				}
+				for (int to = 0; to < cols; to++) {
+					if (fixedCols[to] || previousCol[to] != -2 || !isTight(nextRow, to)) continue;
+					previousCol[to] = from;
+					if (to == freedCol) {
+						// Each row on the cycle takes the column after its own
+						int current = to;
+						while (previousCol[current] != -1) {
+							int moving = rowByCol[previousCol[current]];
+							rowByCol[current] = moving;
+							colByRow[moving] = current;
+							current = previousCol[current];
+						}
+						rowByCol[col] = row;
+						colByRow[row] = col;
+						return true;
+					}
+					queue[tail++] = to;
+				}
+			}
+			return false;
 		}
 	}
-	
+
 }
@@ -0,0 +1,46 @@
+package org.eclipse.epsilon.flexmi;
+
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * The features that the attributes of an element are assigned to. Plans
+ * only depend on the class of the element's EObject and on the names (and
+ * order) of the element's attributes, so they can be reused across
+ * elements with the same signature.
+ */
+public class AssignmentPlan {
+	
+	protected int idAttribute;
+	protected int[] attributes;
+	protected EStructuralFeature[] features;
+	
+	/**
+	 * @param idAttribute The index of the attribute that holds the id
+	 * of the EObject, or -1 if there is no such attribute
+	 * @param attributes The indices of the assigned attributes
+	 * @param features The features of the attributes (null for
+	 * attributes that could not be assigned)
+	 */
+	public AssignmentPlan(int idAttribute, int[] attributes, EStructuralFeature[] features) {
+		this.idAttribute = idAttribute;
+		this.attributes = attributes;
+		this.features = features;
+	}
+	
+	public int getIdAttribute() {
+		return idAttribute;
+	}
+	
+	public int size() {
+		return attributes.length;
+	}
+	
+	public int getAttribute(int i) {
+		return attributes[i];
+	}
+	
+	public EStructuralFeature getFeature(int i) {
+		return features[i];
+	}
+	
+}
@@ -0,0 +1,82 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Memoizes {@link AssignmentPlan}s by EClass and
+ * (ordered) attribute names.
+ */
+public class AssignmentPlanCache {
+	
+	protected HashMap<Key, AssignmentPlan> plans = new HashMap<Key, AssignmentPlan>();
+	protected long hits = 0;
+	protected long misses = 0;
+	
+	public AssignmentPlan get(EClass eClass, String[] attributeNames) {
+		AssignmentPlan plan = plans.get(new Key(eClass, attributeNames));
+		if (plan == null) misses++;
+		else hits++;
+		return plan;
+	}
+	
+	public AssignmentPlan put(EClass eClass, String[] attributeNames, AssignmentPlan plan) {
+		plans.put(new Key(eClass, attributeNames), plan);
+		return plan;
+	}
+	
+	public void invalidate() {
+		plans.clear();
+	}
+	
+	public int size() {
+		return plans.size();
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	public long getMisses() {
+		return misses;
+	}
+	
+	public double getHitRate() {
+		long lookups = hits + misses;
+		if (lookups == 0) return 0;
+		return hits / (double) lookups;
+	}
+	
+	@Override
+	public String toString() {
+		return hits + " hits, " + misses + " misses (" + Math.round(getHitRate() * 100) + "%), " + size() + " plans";
+	}
+	
+	protected static class Key {
+		
+		protected EClass eClass;
+		protected String[] attributeNames;
+		protected int hashCode;
+		
+		public Key(EClass eClass, String[] attributeNames) {
+			this.eClass = eClass;
+			this.attributeNames = attributeNames;
+			this.hashCode = 31 * System.identityHashCode(eClass) + Arrays.hashCode(attributeNames);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return key.eClass == eClass && Arrays.equals(key.attributeNames, attributeNames);
+		}
+	}
+	
+}
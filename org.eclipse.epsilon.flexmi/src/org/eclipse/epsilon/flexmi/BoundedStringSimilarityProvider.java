@@ -0,0 +1,17 @@
+package org.eclipse.epsilon.flexmi;
+
+/**
+ * A {@link StringSimilarityProvider} that can stop computing a similarity
+ * as soon as it is known to be below a minimum. Fuzzy matching only needs
+ * the similarities that reach the best one so far, and uses this variant
+ * when the provider of a resource implements it.
+ */
+public interface BoundedStringSimilarityProvider extends StringSimilarityProvider {
+	
+	/**
+	 * Returns the similarity of the strings if it is at least the minimum;
+	 * otherwise returns some value lower than the minimum
+	 */
+	public int getSimilarity(String one, String other, int minimum);
+	
+}
@@ -1,25 +1,214 @@
 package org.eclipse.epsilon.flexmi;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class CachedStringSimilarityProvider implements StringSimilarityProvider {
+/**
+ * Memoizes the similarities computed by another provider. The cache is
+ * split into stripes, each with its own lock and a least-recently-used
+ * bound, so that it can be shared between threads and long-lived processes.
+ * Name pairs are looked up through a per-thread probe, without allocation,
+ * which is cleared after each lookup so that it does not keep the names
+ * alive. Cached pairs hold interned names.
+ */
+public class CachedStringSimilarityProvider implements BoundedStringSimilarityProvider {
+	
+	public static final int DEFAULT_CAPACITY = 65536;
+	protected static final int STRIPES = 16;
+	
+	protected static final ThreadLocal<Pair> probe = new ThreadLocal<Pair>() {
+		@Override
+		protected Pair initialValue() {
+			return new Pair();
+		}
+	};
 	
-	protected HashMap<String, Integer> cache = new HashMap<String, Integer>();
 	protected StringSimilarityProvider delegate;
+	protected Stripe[] stripes = new Stripe[STRIPES];
 	
 	public CachedStringSimilarityProvider(StringSimilarityProvider delegate) {
+		this(delegate, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a cache that holds (approximately) up to
+	 * capacity similarities
+	 */
+	public CachedStringSimilarityProvider(StringSimilarityProvider delegate, int capacity) {
 		this.delegate = delegate;
+		int stripeCapacity = Math.max(1, capacity / STRIPES);
+		for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe(stripeCapacity);
+	}
+	
+	public StringSimilarityProvider getDelegate() {
+		return delegate;
 	}
 	
 	@Override
 	public int getSimilarity(String one, String other) {
-		
-		Integer similarity = cache.get(one + "-" + other);
-		if (similarity == null) {
+		if (one == null || other == null) return delegate.getSimilarity(one, other);
+		Pair pair = probe.get().set(one, other);
+		Stripe stripe = getStripe(pair);
+		int similarity = stripe.get(pair);
+		pair.clear();
+		if (similarity < 0) {
 			similarity = delegate.getSimilarity(one, other);
-			cache.put(one + "-" + other, similarity);
+			stripe.put(one, other, similarity);
 		}
 		return similarity;
 	}
+	
+	@Override
+	public int getSimilarity(String one, String other, int minimum) {
+		// Exact similarities of other providers are cached in full
+		if (!(delegate instanceof BoundedStringSimilarityProvider)) return getSimilarity(one, other);
+		BoundedStringSimilarityProvider boundedDelegate = (BoundedStringSimilarityProvider) delegate;
+		if (one == null || other == null) return boundedDelegate.getSimilarity(one, other, minimum);
+		Pair pair = probe.get().set(one, other);
+		Stripe stripe = getStripe(pair);
+		int similarity = stripe.get(pair);
+		pair.clear();
+		if (similarity < 0) {
+			similarity = boundedDelegate.getSimilarity(one, other, minimum);
+			// Similarities below the minimum may not be exact
+			if (similarity >= minimum) stripe.put(one, other, similarity);
+		}
+		return similarity;
+	}
+	
+	protected Stripe getStripe(Pair pair) {
+		int hash = pair.hashCode;
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+	
+	/**
+	 * Discards the cached similarities (but not the statistics)
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.similarities.clear();
+			}
+		}
+	}
+	
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.similarities.size();
+			}
+		}
+		return size;
+	}
+	
+	public long getHits() {
+		long hits = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				hits += stripe.hits;
+			}
+		}
+		return hits;
+	}
+	
+	public long getMisses() {
+		long misses = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				misses += stripe.misses;
+			}
+		}
+		return misses;
+	}
+	
+	public long getEvictions() {
+		long evictions = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				evictions += stripe.evictions;
+			}
+		}
+		return evictions;
+	}
+	
+	@Override
+	public String toString() {
+		return getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions, " + size() + " similarities";
+	}
+	
+	protected static class Stripe {
+		
+		protected LinkedHashMap<Pair, Pair> similarities;
+		protected long hits = 0;
+		protected long misses = 0;
+		protected long evictions = 0;
+		
+		public Stripe(final int capacity) {
+			similarities = new LinkedHashMap<Pair, Pair>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Pair, Pair> eldest) {
+					if (size() <= capacity) return false;
+					evictions++;
+					return true;
+				}
+			};
+		}
+		
+		// Returns -1 if the similarity of the pair is not cached
+		public synchronized int get(Pair pair) {
+			Pair cached = similarities.get(pair);
+			if (cached == null) {
+				misses++;
+				return -1;
+			}
+			hits++;
+			return cached.similarity;
+		}
+		
+		public synchronized void put(String one, String other, int similarity) {
+			// Names parsed from documents are copies of the names of
+			// the metamodel, which are usually interned already
+			Pair pair = new Pair().set(one.intern(), other.intern());
+			pair.similarity = similarity;
+			similarities.put(pair, pair);
+		}
+	}
+	
+	/**
+	 * An ordered pair of names, which also carries
+	 * their similarity when cached
+	 */
+	protected static class Pair {
+		
+		protected String one;
+		protected String other;
+		protected int hashCode;
+		protected int similarity;
+		
+		public Pair set(String one, String other) {
+			this.one = one;
+			this.other = other;
+			this.hashCode = 31 * one.hashCode() + other.hashCode();
+			return this;
+		}
+		
+		public void clear() {
+			one = null;
+			other = null;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Pair)) return false;
+			Pair pair = (Pair) other;
+			return hashCode == pair.hashCode && one.equals(pair.one) && this.other.equals(pair.other);
+		}
+	}
 
 }
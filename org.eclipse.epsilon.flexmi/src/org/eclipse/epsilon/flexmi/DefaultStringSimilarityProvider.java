@@ -1,37 +1,76 @@
 package org.eclipse.epsilon.flexmi;
 
-public class DefaultStringSimilarityProvider implements StringSimilarityProvider {
+public class DefaultStringSimilarityProvider implements BoundedStringSimilarityProvider {
 	
+	// Row of the longest-common-suffix table, reused across calls
+	protected static final ThreadLocal<int[]> scratch = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[64];
+		}
+	};
+	
+	/**
+	 * Returns the length of the longest common substring of the two strings,
+	 * doubled if the second string starts with the first
+	 */
 	public int getSimilarity(String first, String second) {
+		return getSimilarity(first, second, 0);
+	}
+	
+	public int getSimilarity(String first, String second, int minimum) {
 		if (first == null || second == null || first.length() == 0 || second.length() == 0) return 0;
-
-		int maxLen = 0;
+		
+		// The whole of first is then the longest common substring
+		if (second.startsWith(first)) return first.length() * 2;
+		
+		if (Math.min(first.length(), second.length()) < minimum) return 0;
+		
+		return longestCommonSubstring(first, second, minimum);
+	}
+	
+	/**
+	 * Returns the length of the longest common substring of the strings,
+	 * or a lower value if that is below the minimum
+	 */
+	protected int longestCommonSubstring(String first, String second, int minimum) {
 		int firstLength = first.length();
 		int secondLength = second.length();
-		int[][] table = new int[firstLength + 1][secondLength + 1];
-
-		for (int f = 0; f <= firstLength; f++) table[f][0] = 0;
-		for (int s = 0; s <= secondLength; s++) table[0][s] = 0;
 		
-		for (int i = 1; i <= firstLength; i++) {
-			for (int j = 1; j <= secondLength; j++) {
-				if (first.charAt(i - 1) == second.charAt(j - 1)) {
-					if (i == 1 || j == 1) {
-						table[i][j] = 1;
-					} else {
-						table[i][j] = table[i - 1][j - 1] + 1;
-					}
-					if (table[i][j] > maxLen) {
-						maxLen = table[i][j];
-					}
+		int[] row = scratch.get();
+		if (row.length <= secondLength) {
+			row = new int[Math.max(secondLength + 1, row.length * 2)];
+			scratch.set(row);
+		}
+		else {
+			for (int j = 0; j <= secondLength; j++) row[j] = 0;
+		}
+		
+		// row[j] holds the length of the longest common suffix of the first i
+		// characters of first and the first j characters of second; iterating
+		// backwards over j keeps the values of the previous row (i - 1) in
+		// row[j - 1] until they are overwritten
+		int maxLen = 0;
+		for (int i = 0; i < firstLength; i++) {
+			char c = first.charAt(i);
+			int rowMax = 0;
+			for (int j = secondLength; j > 0; j--) {
+				if (c == second.charAt(j - 1)) {
+					int length = row[j - 1] + 1;
+					row[j] = length;
+					if (length > rowMax) rowMax = length;
+				}
+				else {
+					row[j] = 0;
 				}
 			}
+			if (rowMax > maxLen) maxLen = rowMax;
+			
+			// A common substring can at best extend a suffix
+			// of this row by all the remaining characters
+			if (maxLen < minimum && rowMax + firstLength - i - 1 < minimum) return maxLen;
 		}
-		
-		if (second.startsWith(first)) maxLen = maxLen * 2;
-		
 		return maxLen;
 	}
-
 	
 }
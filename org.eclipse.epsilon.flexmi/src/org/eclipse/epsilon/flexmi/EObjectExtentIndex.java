@@ -0,0 +1,167 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EcorePackage;
+
+/**
+ * Keeps the EObjects created during a load by class, in creation (i.e.
+ * document) order, so that the instances of a class and its subtypes can
+ * be listed without traversing the resource. Each class is registered
+ * under all of its supertypes when its first instance is added.
+ */
+public class EObjectExtentIndex {
+	
+	protected Map<EClass, Extent> extents = new HashMap<EClass, Extent>();
+	protected Map<EClass, List<Extent>> extentsByType = new HashMap<EClass, List<Extent>>();
+	protected List<Extent> allExtents = new ArrayList<Extent>();
+	protected int size = 0;
+	
+	public void add(EObject eObject) {
+		EClass eClass = eObject.eClass();
+		Extent extent = extents.get(eClass);
+		if (extent == null) {
+			extent = new Extent();
+			extents.put(eClass, extent);
+			allExtents.add(extent);
+			getExtents(eClass).add(extent);
+			for (EClass superType : eClass.getEAllSuperTypes()) {
+				getExtents(superType).add(extent);
+			}
+		}
+		extent.add(eObject, size++);
+	}
+	
+	protected List<Extent> getExtents(EClass type) {
+		List<Extent> typeExtents = extentsByType.get(type);
+		if (typeExtents == null) {
+			typeExtents = new ArrayList<Extent>();
+			extentsByType.put(type, typeExtents);
+		}
+		return typeExtents;
+	}
+	
+	/**
+	 * Adds the EObjects of the other index, as
+	 * created after the ones of this index
+	 */
+	public void addAll(EObjectExtentIndex other) {
+		for (EObject eObject : merge(other.allExtents)) {
+			add(eObject);
+		}
+	}
+	
+	/**
+	 * Returns the EObjects of the type (including instances of its
+	 * subtypes) in the order in which they were added
+	 */
+	public List<EObject> getInstances(EClass type) {
+		if (type == EcorePackage.Literals.EOBJECT) return merge(allExtents);
+		List<Extent> typeExtents = extentsByType.get(type);
+		if (typeExtents == null) return Collections.emptyList();
+		return merge(typeExtents);
+	}
+	
+	/**
+	 * Returns the EObjects of the type (including instances of its
+	 * subtypes) in no particular order, for callers that sort them anyway
+	 */
+	public List<EObject> getUnorderedInstances(EClass type) {
+		List<Extent> typeExtents = type == EcorePackage.Literals.EOBJECT ? allExtents : extentsByType.get(type);
+		if (typeExtents == null) return Collections.emptyList();
+		if (typeExtents.size() == 1) return typeExtents.get(0).asList();
+		
+		int total = 0;
+		for (Extent extent : typeExtents) total += extent.size;
+		List<EObject> instances = new ArrayList<EObject>(total);
+		for (Extent extent : typeExtents) {
+			instances.addAll(extent.asList());
+		}
+		return instances;
+	}
+	
+	/**
+	 * Returns the classes that have instances in the index
+	 */
+	public Set<EClass> getEClasses() {
+		return Collections.unmodifiableSet(extents.keySet());
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		extents.clear();
+		extentsByType.clear();
+		allExtents.clear();
+		size = 0;
+	}
+	
+	// Merges extents by creation order, taking the next EObject from a
+	// heap of the extents ordered by their first EObject not yet taken
+	protected List<EObject> merge(List<Extent> extents) {
+		if (extents.size() == 1) return extents.get(0).asList();
+		
+		int total = 0;
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(Math.max(1, extents.size()));
+		for (Extent extent : extents) {
+			total += extent.size;
+			if (extent.size > 0) cursors.add(new Cursor(extent));
+		}
+		List<EObject> merged = new ArrayList<EObject>(total);
+		while (!cursors.isEmpty()) {
+			Cursor cursor = cursors.poll();
+			merged.add(cursor.extent.eObjects[cursor.position++]);
+			if (cursor.position < cursor.extent.size) cursors.add(cursor);
+		}
+		return merged;
+	}
+	
+	protected static class Extent {
+		
+		protected EObject[] eObjects = new EObject[4];
+		protected int[] sequence = new int[4];
+		protected int size = 0;
+		
+		public void add(EObject eObject, int number) {
+			if (size == eObjects.length) {
+				eObjects = Arrays.copyOf(eObjects, size * 2);
+				sequence = Arrays.copyOf(sequence, size * 2);
+			}
+			eObjects[size] = eObject;
+			sequence[size++] = number;
+		}
+		
+		public List<EObject> asList() {
+			return Collections.unmodifiableList(Arrays.asList(eObjects).subList(0, size));
+		}
+	}
+	
+	protected static class Cursor implements Comparable<Cursor> {
+		
+		protected Extent extent;
+		protected int position = 0;
+		
+		public Cursor(Extent extent) {
+			this.extent = extent;
+		}
+		
+		@Override
+		public int compareTo(Cursor other) {
+			int sequence = extent.sequence[position];
+			int otherSequence = other.extent.sequence[other.position];
+			return sequence < otherSequence ? -1 : (sequence == otherSequence ? 0 : 1);
+		}
+	}
+
+}
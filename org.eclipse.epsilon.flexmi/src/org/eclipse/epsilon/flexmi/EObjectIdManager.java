@@ -1,32 +1,147 @@
 package org.eclipse.epsilon.flexmi;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.emf.ecore.EObject;
 
+/**
+ * Keeps the EObjects registered under each id, and the first id of each
+ * registered EObject (by identity) so that {@link #hasId(EObject)} takes
+ * constant time. Managers can be filled from several threads at once; the
+ * EObjects of an id are kept in the order in which they were registered.
+ */
 public class EObjectIdManager {
 	
-	protected HashMap<String, List<EObject>> cache = new HashMap<String, List<EObject>>();
+	protected static final int DEFAULT_EXPECTED_IDS = 16;
+	
+	// Values are the EObject of an id, or the SharedId of an id of several
+	protected ConcurrentHashMap<String, Object> cache;
+	protected ConcurrentHashMap<Registration, Registration> registrations;
+	
+	public EObjectIdManager() {
+		this(DEFAULT_EXPECTED_IDS);
+	}
+	
+	/**
+	 * Creates a manager sized for the expected number of
+	 * registered EObjects, to avoid rehashing while it is filled
+	 */
+	public EObjectIdManager(int expectedIds) {
+		int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(DEFAULT_EXPECTED_IDS, expectedIds) * 4L / 3 + 1);
+		cache = new ConcurrentHashMap<String, Object>(capacity);
+		registrations = new ConcurrentHashMap<Registration, Registration>(capacity);
+	}
 	
 	public void setEObjectId(EObject eObject, String id) {
-		List<EObject> eObjects = cache.get(id);
-		if (eObjects == null) {
-			eObjects = new ArrayList<EObject>();
-			cache.put(id, eObjects);
+		Registration registration = new Registration(eObject, id);
+		registrations.putIfAbsent(registration, registration);
+		append(id, eObject);
+	}
+	
+	protected void append(String id, EObject eObject) {
+		Object value = cache.putIfAbsent(id, eObject);
+		while (value != null) {
+			if (value instanceof SharedId) {
+				((SharedId) value).add(eObject);
+				return;
+			}
+			if (cache.replace(id, value, new SharedId((EObject) value, eObject))) return;
+			value = cache.get(id);
 		}
-		eObjects.add(eObject);
 	}
 	
 	public List<EObject> getEObjectsById(String id) {
-		List<EObject> eObjects = cache.get(id);
-		if (eObjects == null) return Collections.emptyList();
-		else return eObjects;
+		return toList(cache.get(id));
+	}
+	
+	protected List<EObject> toList(Object value) {
+		if (value == null) return Collections.emptyList();
+		if (value instanceof SharedId) return ((SharedId) value).asList();
+		return Collections.singletonList((EObject) value);
+	}
+	
+	/**
+	 * Registers the EObjects of the other manager, as if they had been
+	 * registered with this one in the first place. The other manager must
+	 * not be filled at the same time.
+	 */
+	public void addAll(EObjectIdManager other) {
+		for (Registration registration : other.registrations.keySet()) {
+			registrations.putIfAbsent(registration, registration);
+		}
+		for (Map.Entry<String, Object> entry : other.cache.entrySet()) {
+			for (EObject eObject : toList(entry.getValue())) {
+				append(entry.getKey(), eObject);
+			}
+		}
 	}
 	
 	public boolean hasId(EObject eObject) {
-		return cache.values().contains(eObject);
+		return registrations.containsKey(new Registration(eObject, null));
+	}
+	
+	/**
+	 * Returns the first id that the EObject was registered
+	 * under, or null if it has not been registered
+	 */
+	public String getId(EObject eObject) {
+		Registration registration = registrations.get(new Registration(eObject, null));
+		return registration != null ? registration.id : null;
+	}
+	
+	/**
+	 * Returns the number of registered EObjects
+	 */
+	public int size() {
+		return registrations.size();
+	}
+	
+	// The EObjects of an id, which grow in place as ids such as
+	// the names of parameters can be shared by many EObjects
+	protected static class SharedId {
+		
+		protected EObject[] eObjects;
+		protected int size;
+		
+		public SharedId(EObject first, EObject second) {
+			eObjects = new EObject[] {first, second, null, null};
+			size = 2;
+		}
+		
+		public synchronized void add(EObject eObject) {
+			if (size == eObjects.length) eObjects = Arrays.copyOf(eObjects, size * 2);
+			eObjects[size++] = eObject;
+		}
+		
+		// Returns a snapshot, as elements below the size never change
+		public synchronized List<EObject> asList() {
+			return Collections.unmodifiableList(Arrays.asList(eObjects).subList(0, size));
+		}
+	}
+	
+	// Identifies EObjects by identity, as their equals() may be overridden
+	protected static class Registration {
+		
+		protected EObject eObject;
+		protected String id;
+		
+		public Registration(EObject eObject, String id) {
+			this.eObject = eObject;
+			this.id = id;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(eObject);
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Registration && ((Registration) other).eObject == eObject;
+		}
 	}
 }
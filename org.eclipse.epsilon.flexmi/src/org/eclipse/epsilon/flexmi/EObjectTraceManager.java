@@ -14,6 +14,11 @@ public class EObjectTraceManager {
 		lineEObjectTrace.put(line, eObject);
 	}
 	
+	public void addAll(EObjectTraceManager other) {
+		eObjectLineTrace.putAll(other.eObjectLineTrace);
+		lineEObjectTrace.putAll(other.lineEObjectTrace);
+	}
+	
 	public EObject getEObject(int line) {
 		return lineEObjectTrace.get(line);
 	}
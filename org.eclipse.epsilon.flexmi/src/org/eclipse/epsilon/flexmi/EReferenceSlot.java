@@ -1,9 +1,15 @@
 package org.eclipse.epsilon.flexmi;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.util.InternalEList;
 
 public class EReferenceSlot {
 	
@@ -38,4 +44,43 @@ public class EReferenceSlot {
 		else eObject.eSet(eReference, value);
 	}
 	
+	/**
+	 * Adds a value that the caller knows not to be in the slot (e.g. a new
+	 * EObject), skipping the uniqueness check of many-valued references
+	 */
+	@SuppressWarnings("unchecked")
+	public void newUniqueValue(EObject value) {
+		Object values = eObject.eGet(eReference);
+		if (eReference.isMany() && values instanceof InternalEList<?>) ((InternalEList<Object>) values).addUnique(value);
+		else newValue(value);
+	}
+	
+	/**
+	 * Adds the values to a many-valued reference in one operation, as
+	 * adding them one by one would: values that are in the slot already, or
+	 * that repeat, are skipped if the reference is unique. The uniqueness
+	 * check takes linear instead of quadratic time, and is by identity, as
+	 * is the check of EMF's lists of EObjects.
+	 */
+	@SuppressWarnings("unchecked")
+	public void newValues(Collection<EObject> values) {
+		Object slotValues = eObject.eGet(eReference);
+		if (!eReference.isMany() || !(slotValues instanceof InternalEList<?>)) {
+			for (EObject value : values) newValue(value);
+			return;
+		}
+		
+		InternalEList<Object> list = (InternalEList<Object>) slotValues;
+		if (eReference.isUnique()) {
+			Map<Object, Object> present = new IdentityHashMap<Object, Object>(list.size() + values.size());
+			for (Iterator<Object> it = list.basicIterator(); it.hasNext();) present.put(it.next(), this);
+			List<EObject> newValues = new ArrayList<EObject>(values.size());
+			for (EObject value : values) {
+				if (present.put(value, this) == null) newValues.add(value);
+			}
+			values = newValues;
+		}
+		list.addAllUnique(values);
+	}
+	
 }
@@ -0,0 +1,65 @@
+package org.eclipse.epsilon.flexmi;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EReference;
+
+/**
+ * How an element nested in an EObject (or in a containment slot) is mapped
+ * to the metamodel: to an attribute of the parent, to a containment slot of
+ * the parent, to a new EObject of a class, or not at all.
+ */
+public class ElementMapping {
+	
+	public static final int ATTRIBUTE = 0;
+	public static final int CONTAINMENT_SLOT = 1;
+	public static final int EOBJECT = 2;
+	public static final int UNMAPPED = 3;
+	
+	public static final ElementMapping UNMAPPED_ELEMENT = new ElementMapping(UNMAPPED, null, null, null);
+	
+	protected int kind;
+	protected EAttribute eAttribute;
+	protected EReference eReference;
+	protected EClass eClass;
+	
+	protected ElementMapping(int kind, EAttribute eAttribute, EReference eReference, EClass eClass) {
+		this.kind = kind;
+		this.eAttribute = eAttribute;
+		this.eReference = eReference;
+		this.eClass = eClass;
+	}
+	
+	public static ElementMapping toAttribute(EAttribute eAttribute) {
+		return new ElementMapping(ATTRIBUTE, eAttribute, null, null);
+	}
+	
+	public static ElementMapping toContainmentSlot(EReference eReference) {
+		return new ElementMapping(CONTAINMENT_SLOT, null, eReference, null);
+	}
+	
+	/**
+	 * @param eReference The containment reference of the parent that will
+	 * hold the new object, or null if it is given by the enclosing slot
+	 */
+	public static ElementMapping toEObject(EClass eClass, EReference eReference) {
+		return new ElementMapping(EOBJECT, null, eReference, eClass);
+	}
+	
+	public int getKind() {
+		return kind;
+	}
+	
+	public EAttribute getEAttribute() {
+		return eAttribute;
+	}
+	
+	public EReference getEReference() {
+		return eReference;
+	}
+	
+	public EClass getEClass() {
+		return eClass;
+	}
+	
+}
@@ -0,0 +1,91 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.HashMap;
+
+/**
+ * Memoizes {@link ElementMapping}s by the context of an element (the class
+ * of its parent EObject, or the reference of its parent containment slot),
+ * its name, and the shape of its content, which decides whether it can
+ * be mapped to an attribute or a containment slot.
+ */
+public class ElementMappingCache {
+	
+	public static final int NO_CONTENT = 0;
+	public static final int TEXT_ONLY = 1;
+	public static final int ATTRIBUTES = 2;
+	
+	protected HashMap<Key, ElementMapping> mappings = new HashMap<Key, ElementMapping>();
+	protected long hits = 0;
+	protected long misses = 0;
+	
+	public ElementMapping get(Object context, String name, int content) {
+		ElementMapping mapping = mappings.get(new Key(context, name, content));
+		if (mapping == null) misses++;
+		else hits++;
+		return mapping;
+	}
+	
+	public ElementMapping put(Object context, String name, int content, ElementMapping mapping) {
+		mappings.put(new Key(context, name, content), mapping);
+		return mapping;
+	}
+	
+	/**
+	 * Discards the cached mappings (but not the statistics), e.g.
+	 * when the metamodel or the matching options change
+	 */
+	public void invalidate() {
+		mappings.clear();
+	}
+	
+	public int size() {
+		return mappings.size();
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	public long getMisses() {
+		return misses;
+	}
+	
+	public double getHitRate() {
+		long lookups = hits + misses;
+		if (lookups == 0) return 0;
+		return hits / (double) lookups;
+	}
+	
+	@Override
+	public String toString() {
+		return hits + " hits, " + misses + " misses (" + Math.round(getHitRate() * 100) + "%), " + size() + " mappings";
+	}
+	
+	protected static class Key {
+		
+		protected Object context;
+		protected String name;
+		protected int content;
+		protected int hashCode;
+		
+		public Key(Object context, String name, int content) {
+			this.context = context;
+			this.name = name;
+			this.content = content;
+			this.hashCode = (31 * System.identityHashCode(context) + name.hashCode()) * 31 + content;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return key.context == context && key.content == content && key.name.equals(name);
+		}
+	}
+	
+}
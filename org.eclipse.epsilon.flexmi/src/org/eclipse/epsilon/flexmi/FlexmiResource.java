@@ -1,21 +1,28 @@
 package org.eclipse.epsilon.flexmi;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
-import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.ENamedElement;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
@@ -28,34 +35,70 @@ import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 import org.eclipse.epsilon.flexmi.AssignmentCalculator.AssignmentScorer;
 import org.eclipse.epsilon.flexmi.xml.Location;
+import org.eclipse.epsilon.flexmi.xml.ParserContextPool;
+import org.eclipse.epsilon.flexmi.xml.PipelineStatistics;
+import org.eclipse.epsilon.flexmi.xml.PipelinedBackend;
 import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser;
-import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Handler;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.ProcessingInstruction;
-import org.w3c.dom.Text;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Backend;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.eclipse.epsilon.flexmi.xml.SAXBackend;
+import org.eclipse.epsilon.flexmi.xml.XMLElement;
+import org.eclipse.epsilon.flexmi.xml.TokenizerBackend;
 
-public class FlexmiResource extends ResourceImpl implements Handler {
+public class FlexmiResource extends ResourceImpl implements StreamingHandler {
 	
 	public static final String OPTION_FUZZY_CONTAINMENT_MATCHING = "fuzzyContainmentMatching";
 	public static final String OPTION_ORPHANS_AS_TOP_LEVEL = "orphansAsTopLevel";
 	public static final String OPTION_FUZZY_MATCHING_THRESHOLD = "fuzzyMatchingThreshold";
+	public static final String OPTION_PARSER = "parser";
+	public static final String OPTION_PARALLEL_MAPPING = "parallelMapping";
+	public static final String OPTION_PIPELINE = "pipeline";
+	public static final String OPTION_SHARED_NAME_RESOLUTION = "sharedNameResolution";
+	public static final String OPTION_NAME_RESOLUTION_CACHE = "nameResolutionCache";
+	public static final String OPTION_PARALLEL_RESOLUTION = "parallelResolution";
+	
+	public static final String PARSER_SAX = "sax";
+	public static final String PARSER_DOM = "dom";
+	public static final String PARSER_TOKENIZER = "tokenizer";
+	
+	// Candidate sets from this size up are searched through a FuzzyNameIndex
+	protected static final int FUZZY_INDEX_THRESHOLD = 32;
+	// Fewer references are resolved faster than tasks are handed out
+	protected static final int PARALLEL_RESOLUTION_THRESHOLD = 1024;
+	// Methods that parallel mapping calls concurrently or bypasses
+	protected static final Set<String> PARALLEL_MAPPING_METHODS = new HashSet<String>(Arrays.asList(
+			"startElement", "endElement", "setAttributes", "setEAttributeValue", "getEValue", "eClassForName",
+			"createEObject", "addContainedEObject", "getElementMapping", "getAssignmentPlan", "getAssignment",
+			"getCandidateStructuralFeaturesForAttribute", "getAllConcreteEClasses", "getAllSubtypes",
+			"eNamedElementForName", "getBestFuzzyMatch", "isDefaultStringSimilarity", "getMetamodelIndex"));
 	
 	protected EObjectIdManager eObjectIdManager = new EObjectIdManager();
+	// Ids registered by the last load, to size the manager of the next
+	protected int expectedIds = 0;
 	protected EObjectTraceManager eObjectTraceManager = new EObjectTraceManager();
+	protected EObjectExtentIndex eObjectExtentIndex = new EObjectExtentIndex();
 	protected List<UnresolvedReference> unresolvedReferences = new ArrayList<UnresolvedReference>();
 	protected Stack<Object> stack = new Stack<Object>();
-	protected Node currentNode = null;
+	protected Location currentLocation = null;
 	protected List<String> scripts = new ArrayList<String>();
 	protected HashMap<String, EClass> eClassCache = new HashMap<String, EClass>();
-	protected HashMap<EClass, List<EClass>> allSubtypesCache = new HashMap<EClass, List<EClass>>();
+	protected MetamodelIndex metamodelIndex = null;
+	protected ElementMappingCache elementMappingCache = new ElementMappingCache();
+	protected AssignmentPlanCache assignmentPlanCache = new AssignmentPlanCache();
+	protected SmallAssignmentSolver smallAssignmentSolver = new SmallAssignmentSolver();
+	protected IntegerHungarianAlgorithm hungarianAlgorithm = new IntegerHungarianAlgorithm();
 	protected StringSimilarityProvider stringSimilarityProvider = new CachedStringSimilarityProvider(new DefaultStringSimilarityProvider());
 	
 	protected boolean fuzzyContainmentSlotMatching = true;
 	protected boolean orphansAsTopLevel = true;
 	protected int fuzzyMatchingThreshold = 0;
+	protected String parser = PARSER_SAX;
+	protected boolean parallelMapping = false;
+	protected boolean parallelResolution = false;
+	protected boolean pipeline = false;
+	protected boolean sharedNameResolution = false;
+	protected File nameResolutionCacheFile = null;
+	protected PipelineStatistics pipelineStatistics = null;
 	
 	public static void main(String[] args) throws Exception {
 		
@@ -97,12 +140,40 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		try {
 			if (OPTION_FUZZY_CONTAINMENT_MATCHING.equalsIgnoreCase(key)) {
 				fuzzyContainmentSlotMatching = Boolean.parseBoolean(value);
+				elementMappingCache.invalidate();
 			}
 			else if (OPTION_ORPHANS_AS_TOP_LEVEL.equalsIgnoreCase(key)) {
 				orphansAsTopLevel = Boolean.parseBoolean(value);
 			}
 			else if (OPTION_FUZZY_MATCHING_THRESHOLD.equalsIgnoreCase(key)) {
 				fuzzyMatchingThreshold = Integer.parseInt(value);
+				elementMappingCache.invalidate();
+				eClassCache.clear();
+			}
+			else if (OPTION_PARSER.equalsIgnoreCase(key)) {
+				if (PARSER_SAX.equalsIgnoreCase(value)) parser = PARSER_SAX;
+				else if (PARSER_DOM.equalsIgnoreCase(value)) parser = PARSER_DOM;
+				else if (PARSER_TOKENIZER.equalsIgnoreCase(value)) parser = PARSER_TOKENIZER;
+				else throw new Exception("Unknown parser " + value);
+			}
+			else if (OPTION_PARALLEL_MAPPING.equalsIgnoreCase(key)) {
+				parallelMapping = Boolean.parseBoolean(value);
+			}
+			else if (OPTION_PARALLEL_RESOLUTION.equalsIgnoreCase(key)) {
+				parallelResolution = Boolean.parseBoolean(value);
+			}
+			else if (OPTION_PIPELINE.equalsIgnoreCase(key)) {
+				pipeline = Boolean.parseBoolean(value);
+			}
+			else if (OPTION_SHARED_NAME_RESOLUTION.equalsIgnoreCase(key)) {
+				sharedNameResolution = Boolean.parseBoolean(value);
+			}
+			else if (OPTION_NAME_RESOLUTION_CACHE.equalsIgnoreCase(key)) {
+				// A snapshot of the shared resolutions, read before
+				// they are first used and written after each load
+				nameResolutionCacheFile = new File(value);
+				sharedNameResolution = true;
+				if (metamodelIndex != null) metamodelIndex.getNameResolutionCache().load(nameResolutionCacheFile);
 			}
 			else throw new Exception("Unknown option");
 		}
@@ -117,8 +188,11 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		stack.clear();
 		scripts.clear();
 		eClassCache.clear();
-		allSubtypesCache.clear();
-		eObjectIdManager = new EObjectIdManager();
+		metamodelIndex = null;
+		elementMappingCache = new ElementMappingCache();
+		assignmentPlanCache = new AssignmentPlanCache();
+		eObjectIdManager = new EObjectIdManager(expectedIds);
+		eObjectExtentIndex = new EObjectExtentIndex();
 		
 		if (options != null) {
 			for (Object key : options.keySet()) {
@@ -126,16 +200,46 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 			}
 		}
 		
-		new PseudoSAXParser().parse(inputStream, this);
+		StreamingHandler handler = this;
+		if (parallelMapping && isParallelMappingSupported()) handler = new ParallelMappingHandler(this);
+		
+		pipelineStatistics = null;
+		
+		// The pipeline does not apply to the DOM parser, which needs
+		// the complete document before it emits any events
+		ParserContextPool contextPool = ParserContextPoolAdapter.getPool(getResourceSet());
+		if (PARSER_DOM.equals(parser)) new PseudoSAXParser(contextPool).parseDocument(inputStream, handler);
+		else {
+			Backend backend = PARSER_TOKENIZER.equals(parser) ? new TokenizerBackend(contextPool) : new SAXBackend(contextPool);
+			if (pipeline) {
+				PipelinedBackend pipelinedBackend = new PipelinedBackend(backend);
+				try {
+					new PseudoSAXParser(pipelinedBackend).parse(inputStream, handler);
+				}
+				finally {
+					pipelineStatistics = pipelinedBackend.getStatistics();
+				}
+			}
+			else new PseudoSAXParser(backend).parse(inputStream, handler);
+		}
+		
+		if (nameResolutionCacheFile != null && metamodelIndex != null) {
+			try {
+				metamodelIndex.getNameResolutionCache().save(nameResolutionCacheFile);
+			}
+			catch (IOException ex) {
+				addParseWarning("Could not write name resolutions to " + nameResolutionCacheFile + ": " + ex.getMessage());
+			}
+		}
 	}
 	
 	@Override
-	public void startDocument(Document document) {}
-
+	public void startDocument() {}
+	
 	@Override
-	public void startElement(Element element) {
-		currentNode = element;
-		String name = element.getNodeName();
+	public void startElement(XMLElement element) {
+		currentLocation = element.getLocation();
+		String name = element.getName();
 		
 		//Remove prefixes
 		//TODO: Add option to disable this
@@ -150,8 +254,9 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		if (stack.isEmpty() || (stack.peek() == null && orphansAsTopLevel)) {
 			eClass = eClassForName(name);
 			if (eClass != null) {
-				eObject = eClass.getEPackage().getEFactoryInstance().create(eClass);
-				getContents().add(eObject);
+				eObject = createEObject(eClass);
+				eObjectExtentIndex.add(eObject);
+				addTopLevelEObject(eObject);
 				setAttributes(eObject, element);
 			}
 			else {
@@ -171,11 +276,18 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 			// The parent is an already-established containment slot
 			else if (peek instanceof EReferenceSlot) {
 				EReferenceSlot containmentSlot = (EReferenceSlot) peek;
-				eClass = (EClass) eNamedElementForName(name, getAllSubtypes(containmentSlot.getEReference().getEReferenceType()));
+				ElementMapping mapping = elementMappingCache.get(containmentSlot.getEReference(), name, ElementMappingCache.NO_CONTENT);
+				if (mapping == null) {
+					eClass = (EClass) eNamedElementForName(name, getMetamodelIndex().getSubtypeNames(containmentSlot.getEReference().getEReferenceType()));
+					mapping = eClass != null ? ElementMapping.toEObject(eClass, null) : ElementMapping.UNMAPPED_ELEMENT;
+					elementMappingCache.put(containmentSlot.getEReference(), name, ElementMappingCache.NO_CONTENT, mapping);
+				}
+				eClass = mapping.getEClass();
 				
 				if (eClass != null) {
-					eObject = eClass.getEPackage().getEFactoryInstance().create(eClass);
-					containmentSlot.newValue(eObject);
+					eObject = createEObject(eClass);
+					eObjectExtentIndex.add(eObject);
+					addContainedEObject(containmentSlot.getEObject(), containmentSlot.getEReference(), eObject);
 					stack.push(eObject);
 					setAttributes(eObject, element);
 				}
@@ -188,93 +300,140 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 			else if (peek instanceof EObject) {
 				EObject parent = (EObject) peek;
 				
-				if (element.getAttributes().getLength() == 0 && element.getChildNodes().getLength() == 1 && element.getFirstChild() instanceof Text) {
-					EAttribute eAttribute = (EAttribute) eNamedElementForName(name, parent.eClass().getEAllAttributes());
-					
-					if (eAttribute != null) {
-						setEAttributeValue(parent, eAttribute, name, element.getTextContent().trim());
-						eObjectTraceManager.trace(parent, getLineNumber(element));
-						stack.push(null);
-						return;
-					}
+				int content = ElementMappingCache.ATTRIBUTES;
+				if (element.getAttributeCount() == 0) {
+					content = element.getText() != null ? ElementMappingCache.TEXT_ONLY : ElementMappingCache.NO_CONTENT;
 				}
 				
-				EReference containment = null;
+				ElementMapping mapping = elementMappingCache.get(parent.eClass(), name, content);
+				if (mapping == null) {
+					mapping = elementMappingCache.put(parent.eClass(), name, content, getElementMapping(parent.eClass(), name, content));
+				}
 				
-				// No attributes -> Check whether there is a containment reference with that name
-				if (element.getAttributes().getLength() == 0) {
-					if (fuzzyContainmentSlotMatching) {
-						containment = (EReference) eNamedElementForName(name, parent.eClass().getEAllContainments());
-					}
-					else {
-						containment = (EReference) eNamedElementForName(name, parent.eClass().getEAllContainments(), false);				
-					}
-					if (containment != null) {
-						EReferenceSlot containmentSlot = new EReferenceSlot(containment, parent);
+				switch (mapping.getKind()) {
+					case ElementMapping.ATTRIBUTE:
+						setEAttributeValue(parent, mapping.getEAttribute(), name, element.getText().trim());
+						eObjectTraceManager.trace(parent, getLineNumber(element));
+						stack.push(null);
+						break;
+					case ElementMapping.CONTAINMENT_SLOT:
+						EReferenceSlot containmentSlot = new EReferenceSlot(mapping.getEReference(), parent);
 						eObjectTraceManager.trace(parent, getLineNumber(element));
 						stack.push(containmentSlot);
-						return;
-					}
-				}
-				
-				// No containment references found
-				// Find potential types for the element
-				Set<EClass> candidates = new HashSet<EClass>();
-				for (EReference eReference : parent.eClass().getEAllContainments()) {
-					candidates.addAll(getAllSubtypes(eReference.getEReferenceType()));				
-				}
-				
-				// Get the best match and an appropriate containment reference
-				eClass = (EClass) eNamedElementForName(name, candidates);
-				if (eClass != null) {
-					for (EReference eReference : parent.eClass().getEAllContainments()) {
-						if (getAllSubtypes(eReference.getEReferenceType()).contains(eClass)) {
-							containment = eReference;
-							break;
-						}
-					}
-				}
-				
-				// Found an appropriate containment reference
-				if (containment != null) {
-					eObject = eClass.getEPackage().getEFactoryInstance().create(eClass);
-					if (containment.isMany()) {
-						((List<EObject>) parent.eGet(containment)).add(eObject);
-					}
-					else {
-						parent.eSet(containment, eObject);
-					}
-					setAttributes(eObject, element);
-					stack.push(eObject);
+						break;
+					case ElementMapping.EOBJECT:
+						eClass = mapping.getEClass();
+						eObject = createEObject(eClass);
+						eObjectExtentIndex.add(eObject);
+						addContainedEObject(parent, mapping.getEReference(), eObject);
+						setAttributes(eObject, element);
+						stack.push(eObject);
+						break;
+					// No luck - add warning
+					default:
+						stack.push(null);
+						addParseWarning("Could not map element " + name + " to an EObject");
 				}
-				// No luck - add warning
-				else {
-					stack.push(null);
-					addParseWarning("Could not map element " + name + " to an EObject");
+			}
+		}
+	}
+	
+	/**
+	 * Decides how an element nested in an instance of the parent class
+	 * maps to the metamodel. Decisions are cached by the caller, so this
+	 * must only depend on its arguments and on the options of the resource.
+	 */
+	protected ElementMapping getElementMapping(EClass parentEClass, String name, int content) {
+		
+		if (content == ElementMappingCache.TEXT_ONLY) {
+			EAttribute eAttribute = (EAttribute) eNamedElementForName(name, getMetamodelIndex().getAttributeNames(parentEClass));
+			if (eAttribute != null) return ElementMapping.toAttribute(eAttribute);
+		}
+		
+		EReference containment = null;
+		
+		// No attributes -> Check whether there is a containment reference with that name
+		if (content != ElementMappingCache.ATTRIBUTES) {
+			if (fuzzyContainmentSlotMatching) {
+				containment = (EReference) eNamedElementForName(name, getMetamodelIndex().getContainmentNames(parentEClass));
+			}
+			else {
+				containment = (EReference) eNamedElementForName(name, getMetamodelIndex().getContainmentNames(parentEClass), false);				
+			}
+			if (containment != null) return ElementMapping.toContainmentSlot(containment);
+		}
+		
+		// No containment references found
+		// Find potential types for the element
+		NameIndex candidates = getMetamodelIndex().getContainmentCandidateNames(parentEClass);
+		
+		// Get the best match and an appropriate containment reference
+		EClass eClass = (EClass) eNamedElementForName(name, candidates);
+		if (eClass != null) {
+			for (EReference eReference : parentEClass.getEAllContainments()) {
+				if (getAllSubtypes(eReference.getEReferenceType()).contains(eClass)) {
+					return ElementMapping.toEObject(eClass, eReference);
 				}
 			}
 		}
+		
+		return ElementMapping.UNMAPPED_ELEMENT;
 	}
-
+	
+	/**
+	 * Returns whether the parallelMapping option is honoured. Parallel
+	 * mapping maps the elements under the root in {@link SubtreeMapper}s,
+	 * which call {@link #createEObject(EClass)},
+	 * {@link #getElementMapping(EClass, String, int)},
+	 * {@link #getAssignmentPlan(EClass, String[])},
+	 * {@link #eNamedElementForName(String, NameIndex)} (and the hooks that
+	 * these call in turn, e.g. the string similarity provider) from several
+	 * threads at once, instead of the other mapping methods of this class.
+	 * By default, it is only supported if none of the methods in
+	 * {@link #PARALLEL_MAPPING_METHODS} are overridden; subclasses that
+	 * override them in a thread-safe way can opt in by overriding this method.
+	 */
+	protected boolean isParallelMappingSupported() {
+		for (Class<?> c = getClass(); c != FlexmiResource.class; c = c.getSuperclass()) {
+			for (Method method : c.getDeclaredMethods()) {
+				if (PARALLEL_MAPPING_METHODS.contains(method.getName())) return false;
+			}
+		}
+		return true;
+	}
+	
+	protected EObject createEObject(EClass eClass) {
+		return eClass.getEPackage().getEFactoryInstance().create(eClass);
+	}
+	
+	protected void addTopLevelEObject(EObject eObject) {
+		getContents().add(eObject);
+	}
+	
+	protected void addContainedEObject(EObject parent, EReference containment, EObject eObject) {
+		new EReferenceSlot(containment, parent).newUniqueValue(eObject);
+	}
+	
 	@Override
-	public void endElement(Element element) {
+	public void endElement(XMLElement element) {
 		Object object = stack.pop();
 		if (object != null && object instanceof EObject) {
 			EObject eObject = (EObject) object;
 			eObjectTraceManager.trace(eObject, getLineNumber(element));
 		}
 	}
-
+	
 	@Override
-	public void processingInstruction(ProcessingInstruction processingInstruction) {
-		currentNode = processingInstruction;
-		
-		String key = processingInstruction.getTarget();
-		String value = processingInstruction.getData();
+	public void processingInstruction(String key, String value, Location location) {
+		currentLocation = location;
 		
 		if ("nsuri".equalsIgnoreCase(key)) {
 			EPackage ePackage = EPackage.Registry.INSTANCE.getEPackage(value);
-			if (ePackage != null) getResourceSet().getPackageRegistry().put(ePackage.getNsURI(), ePackage);
+			if (ePackage != null) {
+				getResourceSet().getPackageRegistry().put(ePackage.getNsURI(), ePackage);
+				metamodelIndex = null;
+				elementMappingCache.invalidate();
+			}
 			else addParseWarning("Failed to locate EPackage for nsURI " + value + " ");
 		}
 		else if ("eol".equalsIgnoreCase(key)) {
@@ -282,63 +441,233 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		}
 		else processOption(key, value);
 	}
-
+	
 	@Override
-	public void endDocument(Document document) {
+	public void endDocument() {
 		resolveReferences();
 	}
 	
+	/**
+	 * Returns the statistics of the parse/map pipeline of the last load,
+	 * or null if the pipeline was not used
+	 */
+	public PipelineStatistics getPipelineStatistics() {
+		return pipelineStatistics;
+	}
+	
+	public ElementMappingCache getElementMappingCache() {
+		return elementMappingCache;
+	}
+	
+	public AssignmentPlanCache getAssignmentPlanCache() {
+		return assignmentPlanCache;
+	}
+	
 	public List<UnresolvedReference> getUnresolvedReferences() {
 		return unresolvedReferences;
 	}
 	
 	protected void addParseWarning(String message) {
-		addParseWarning(message, getLineNumber(currentNode));
+		addParseWarning(message, getLineNumber(currentLocation));
 	}
 	
 	protected void addParseWarning(String message, int line) {
 		getWarnings().add(new FlexmiDiagnostic(message, line, this));
 	}
 	
-	@SuppressWarnings("unchecked")
 	protected void resolveReferences() {
+		// Wildcards resolve to instances in the order of the contents
+		// of the resource, which differs from document order when
+		// siblings are interleaved across containment references
+		Map<EObject, Integer> treePositions = null;
+		for (UnresolvedReference unresolvedReference : unresolvedReferences) {
+			if (unresolvedReference.getEReference().isMany() && "*".equals(unresolvedReference.getValue())) {
+				treePositions = getTreePositions();
+				break;
+			}
+		}
+		
+		// Targets are looked up first, which only reads the model, and
+		// then set in the order of the references on this thread, as
+		// setting a reference can change other objects too (e.g. opposites)
+		Object[] resolvedTargets = new Object[unresolvedReferences.size()];
+		if (parallelResolution && unresolvedReferences.size() >= PARALLEL_RESOLUTION_THRESHOLD) {
+			resolveTargetsInParallel(resolvedTargets, treePositions);
+		}
+		else {
+			for (int i = 0; i < resolvedTargets.length; i++) {
+				resolvedTargets[i] = resolveTargets(unresolvedReferences.get(i), treePositions);
+			}
+		}
+		
 		List<UnresolvedReference> unresolvableReferences = new ArrayList<UnresolvedReference>();
+		// Targets of many-valued references are collected by owner and
+		// reference, and added in bulk once all of them are known
+		Map<EObject, Map<EReference, List<EObject>>> targets = new IdentityHashMap<EObject, Map<EReference, List<EObject>>>();
 		
-		for (UnresolvedReference unresolvedReference : unresolvedReferences) {
+		for (int i = 0; i < resolvedTargets.length; i++) {
+			UnresolvedReference unresolvedReference = unresolvedReferences.get(i);
 			EReference eReference = unresolvedReference.getEReference();
-			if (eReference.isMany()) {
-				
-				if ("*".equals(unresolvedReference.getValue())) {
-					Iterator<EObject> it = this.getAllContents();
-					while (it.hasNext()) {
-						EObject candidate = it.next();
-						if (eReference.getEReferenceType().isInstance(candidate)) {
-							new EReferenceSlot(eReference, unresolvedReference.getEObject()).newValue(candidate);
-						}
-					}
-				}
-				else {
-					if (!resolveReference(unresolvedReference)) unresolvableReferences.add(unresolvedReference);
-				}
+			Object resolved = resolvedTargets[i];
+			if (resolved == null) {
+				unresolvableReferences.add(unresolvedReference);
+				continue;
+			}
+			
+			@SuppressWarnings("unchecked")
+			List<EObject> referenceTargets = resolved instanceof EObject ? Collections.singletonList((EObject) resolved) : (List<EObject>) resolved;
+			// Adding to a reference with an opposite changes the opposite
+			// lists (or values) of the targets, which must happen in order
+			if (eReference.isMany() && eReference.getEOpposite() == null && !eReference.isContainment()) {
+				getTargets(targets, unresolvedReference.getEObject(), eReference).addAll(referenceTargets);
 			}
 			else {
-				if (!resolveReference(unresolvedReference)) unresolvableReferences.add(unresolvedReference);
+				for (EObject target : referenceTargets) {
+					new EReferenceSlot(eReference, unresolvedReference.getEObject()).newValue(target);
+				}
+			}
+		}
+		
+		for (Map.Entry<EObject, Map<EReference, List<EObject>>> ownerTargets : targets.entrySet()) {
+			for (Map.Entry<EReference, List<EObject>> referenceTargets : ownerTargets.getValue().entrySet()) {
+				new EReferenceSlot(referenceTargets.getKey(), ownerTargets.getKey()).newValues(referenceTargets.getValue());
 			}
 		}
 		
 		for (UnresolvedReference reference : unresolvableReferences) {
 			addParseWarning("Could not resolve target " + reference.getValue() + " for reference " + reference.getAttributeName() + " (" + reference.getEReference().getName() + ")", reference.getLine());
 		}
+		expectedIds = eObjectIdManager.size();
 		eObjectIdManager = new EObjectIdManager();
 	}
 	
-	protected boolean resolveReference(UnresolvedReference unresolvedReference) {
-		List<EObject> candidates = eObjectIdManager.getEObjectsById(unresolvedReference.getValue());
-		return unresolvedReference.resolve(candidates);
+	/**
+	 * Returns the target of the reference, the instances of a many-valued
+	 * wildcard reference, or null if the reference cannot be resolved
+	 */
+	protected Object resolveTargets(UnresolvedReference unresolvedReference, Map<EObject, Integer> treePositions) {
+		EReference eReference = unresolvedReference.getEReference();
+		if (eReference.isMany() && "*".equals(unresolvedReference.getValue())) {
+			return getInstances(eReference.getEReferenceType(), treePositions);
+		}
+		return resolveTarget(unresolvedReference);
+	}
+	
+	/**
+	 * Looks the targets up on the threads of parallel mapping, partitioning
+	 * the references by owner. This only reads the model and the indices of
+	 * the load, once the lazily computed supertypes of the classes involved
+	 * are in place.
+	 */
+	protected void resolveTargetsInParallel(final Object[] resolvedTargets, final Map<EObject, Integer> treePositions) {
+		for (EClass eClass : eObjectExtentIndex.getEClasses()) {
+			eClass.getEAllSuperTypes();
+		}
+		
+		int partitions = Runtime.getRuntime().availableProcessors() * 4;
+		final List<List<Integer>> partitionedReferences = new ArrayList<List<Integer>>();
+		for (int p = 0; p < partitions; p++) partitionedReferences.add(new ArrayList<Integer>());
+		Map<EObject, Integer> partitionByOwner = new IdentityHashMap<EObject, Integer>();
+		for (int i = 0; i < unresolvedReferences.size(); i++) {
+			UnresolvedReference unresolvedReference = unresolvedReferences.get(i);
+			unresolvedReference.getEReference().getEReferenceType().getEAllSuperTypes();
+			Integer partition = partitionByOwner.get(unresolvedReference.getEObject());
+			if (partition == null) {
+				partition = partitionByOwner.size() % partitions;
+				partitionByOwner.put(unresolvedReference.getEObject(), partition);
+			}
+			partitionedReferences.get(partition).add(i);
+		}
+		
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<Integer> references : partitionedReferences) {
+			if (references.isEmpty()) continue;
+			futures.add(ParallelMappingHandler.getExecutorService().submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i : references) {
+						resolvedTargets[i] = resolveTargets(unresolvedReferences.get(i), treePositions);
+					}
+				}
+			}));
+		}
+		
+		// Waiting for the tasks also makes their results visible
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex) {
+				if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+				throw new RuntimeException(ex.getCause());
+			}
+		}
+	}
+	
+	protected List<EObject> getTargets(Map<EObject, Map<EReference, List<EObject>>> targets, EObject eObject, EReference eReference) {
+		Map<EReference, List<EObject>> ownerTargets = targets.get(eObject);
+		if (ownerTargets == null) {
+			ownerTargets = new HashMap<EReference, List<EObject>>();
+			targets.put(eObject, ownerTargets);
+		}
+		List<EObject> referenceTargets = ownerTargets.get(eReference);
+		if (referenceTargets == null) {
+			referenceTargets = new ArrayList<EObject>();
+			ownerTargets.put(eReference, referenceTargets);
+		}
+		return referenceTargets;
+	}
+	
+	protected Map<EObject, Integer> getTreePositions() {
+		Map<EObject, Integer> treePositions = new IdentityHashMap<EObject, Integer>(eObjectExtentIndex.size() * 4 / 3 + 1);
+		Iterator<EObject> it = getAllContents();
+		while (it.hasNext()) {
+			treePositions.put(it.next(), treePositions.size());
+		}
+		return treePositions;
+	}
+	
+	// Returns the loaded instances of the type that are (still) in the resource, in tree order
+	protected List<EObject> getInstances(EClass type, final Map<EObject, Integer> treePositions) {
+		List<EObject> instances = new ArrayList<EObject>();
+		for (EObject instance : eObjectExtentIndex.getUnorderedInstances(type)) {
+			if (treePositions.containsKey(instance)) instances.add(instance);
+		}
+		Collections.sort(instances, new Comparator<EObject>() {
+			@Override
+			public int compare(EObject first, EObject second) {
+				return treePositions.get(first) - treePositions.get(second);
+			}
+		});
+		return instances;
+	}
+	
+	/**
+	 * Returns the instances of the class (including instances of its
+	 * subtypes) that were created by the last load and are still in the
+	 * resource, in document order, without traversing the resource
+	 */
+	public List<EObject> getAllInstances(EClass eClass) {
+		List<EObject> instances = new ArrayList<EObject>();
+		for (EObject instance : eObjectExtentIndex.getInstances(eClass)) {
+			if (instance.eResource() == this) instances.add(instance);
+		}
+		return instances;
+	}
+	
+	protected EObject resolveTarget(UnresolvedReference unresolvedReference) {
+		return unresolvedReference.getTarget(eObjectIdManager.getEObjectsById(unresolvedReference.getValue()));
+	}
+	
+	protected int getLineNumber(XMLElement element) {
+		return getLineNumber(element.getLocation());
 	}
 	
-	protected int getLineNumber(Node node) {
-		Location location = (Location) node.getUserData(Location.ID);
+	protected int getLineNumber(Location location) {
 		if (location != null) {
 			return location.getStartLine();
 		}
@@ -346,42 +675,28 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 	}
 	
 	
-	protected void setAttributes(EObject eObject, Element element) {
+	protected void setAttributes(EObject eObject, XMLElement element) {
 		
-		NamedNodeMap attributes = element.getAttributes();
-		List<EStructuralFeature> eStructuralFeatures = getCandidateStructuralFeaturesForAttribute(eObject.eClass());
+		if (element.getAttributeCount() == 0) return;
 		
-		if (attributes.getLength() == 0 || eStructuralFeatures.size() == 0) return;
-		
-		
-		if (!(eObject.eClass().getEStructuralFeature("id") instanceof EAttribute)) {
-			if (attributes.getNamedItem("id") != null) {
-				String value = attributes.getNamedItem("id").getNodeValue();
-				attributes.removeNamedItem("id");
-				eObjectIdManager.setEObjectId(eObject, value);
-			}
+		String[] attributeNames = new String[element.getAttributeCount()];
+		for (int i=0;i<attributeNames.length;i++) {
+			attributeNames[i] = element.getAttributeName(i);
 		}
 		
-		double[][] inverseSimilarities = new double[attributes.getLength()][eStructuralFeatures.size()];
+		AssignmentPlan plan = assignmentPlanCache.get(eObject.eClass(), attributeNames);
+		if (plan == null) {
+			plan = assignmentPlanCache.put(eObject.eClass(), attributeNames, getAssignmentPlan(eObject.eClass(), attributeNames));
+		}
 		
-		for (int i=0;i<attributes.getLength();i++) {
-			int j=0;
-			String attributeName = attributes.item(i).getNodeName();
-			for (EStructuralFeature sf : eStructuralFeatures) {
-				int similarity = stringSimilarityProvider.getSimilarity(attributeName, sf.getName());
-				double inverseSimilarity = 2;
-				if (similarity != 0) inverseSimilarity = 1/(double)similarity;
-				inverseSimilarities[i][j] = inverseSimilarity;
-				j++;
-			}
+		if (plan.getIdAttribute() > -1) {
+			eObjectIdManager.setEObjectId(eObject, element.getAttributeValue(plan.getIdAttribute()));
 		}
 		
-		int[] assignment = new HungarianAlgorithm(inverseSimilarities).execute();
-				
-		for (int i=0;i<assignment.length;i++) {
-			String name = attributes.item(i).getNodeName();
-			String value = attributes.item(i).getNodeValue();
-			EStructuralFeature sf = eStructuralFeatures.get(assignment[i]);
+		for (int i=0;i<plan.size();i++) {
+			String name = attributeNames[plan.getAttribute(i)];
+			String value = element.getAttributeValue(plan.getAttribute(i));
+			EStructuralFeature sf = plan.getFeature(i);
 			
 			if (sf instanceof EAttribute) {
 				setEAttributeValue(eObject, (EAttribute) sf, name, value);
@@ -397,10 +712,96 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 					unresolvedReferences.add(new UnresolvedReference(eObject, eReference, name, value, getLineNumber(element)));
 				}
 			}
+			else {
+				addParseWarning("Could not map attribute " + name + " to a feature of " + eObject.eClass().getName());
+			}
 		}
 		
 	}
 	
+	/**
+	 * Computes the features that the attributes of an element should be assigned
+	 * to. Plans are cached by the caller, so this must only depend on its arguments.
+	 */
+	protected AssignmentPlan getAssignmentPlan(EClass eClass, String[] attributeNames) {
+		
+		List<EStructuralFeature> eStructuralFeatures = getCandidateStructuralFeaturesForAttribute(eClass);
+		
+		if (eStructuralFeatures.size() == 0) return new AssignmentPlan(-1, new int[0], new EStructuralFeature[0]);
+		
+		List<Integer> attributes = new ArrayList<Integer>();
+		for (int i=0;i<attributeNames.length;i++) {
+			attributes.add(i);
+		}
+		
+		int idAttribute = -1;
+		if (!(eClass.getEStructuralFeature("id") instanceof EAttribute)) {
+			idAttribute = Arrays.asList(attributeNames).indexOf("id");
+			if (idAttribute > -1) attributes.remove((Integer) idAttribute);
+		}
+		
+		int[] planAttributes = new int[attributes.size()];
+		EStructuralFeature[] planFeatures = new EStructuralFeature[attributes.size()];
+		
+		if (attributes.isEmpty()) return new AssignmentPlan(idAttribute, planAttributes, planFeatures);
+		
+		int[][] similarities = new int[attributes.size()][eStructuralFeatures.size()];
+		
+		for (int i=0;i<attributes.size();i++) {
+			int j=0;
+			String attributeName = attributeNames[attributes.get(i)];
+			for (EStructuralFeature sf : eStructuralFeatures) {
+				similarities[i][j] = stringSimilarityProvider.getSimilarity(attributeName, sf.getName());
+				j++;
+			}
+		}
+		
+		int[] assignment = getAssignment(similarities);
+		
+		for (int i=0;i<assignment.length;i++) {
+			planAttributes[i] = attributes.get(i);
+			if (assignment[i] > -1) planFeatures[i] = eStructuralFeatures.get(assignment[i]);
+		}
+		
+		return new AssignmentPlan(idAttribute, planAttributes, planFeatures);
+	}
+	
+	/**
+	 * Returns the assignment of attributes (rows) to features (columns) of
+	 * maximum similarity, i.e. of minimum cost 1/similarity (or 2 for no
+	 * similarity), as the HungarianAlgorithm returns it
+	 */
+	protected int[] getAssignment(int[][] similarities) {
+		// The solvers reuse their buffers, and subtree mappers
+		// compute the plans that they miss concurrently
+		synchronized (smallAssignmentSolver) {
+			// Most matrices are small and have a unique optimal assignment,
+			// which the small solver finds faster than the Hungarian algorithm
+			int[] assignment = smallAssignmentSolver.executeOnInverseSimilarities(similarities);
+			if (assignment != null) return assignment;
+			
+			// The integer version reuses its buffers, and works on exactly
+			// scaled costs instead of rounded ones
+			if (!smallAssignmentSolver.isTied() && similarities[0].length <= 64 && similarities.length <= 64 && hungarianAlgorithm.resetToInverseSimilarities(similarities)) {
+				assignment = new int[similarities.length];
+				hungarianAlgorithm.execute(assignment);
+				if (hungarianAlgorithm.hasUniqueAssignment()) return assignment;
+			}
+		}
+
+		// Among tied assignments, the one of the original algorithm
+		// depends on the rounding of its floating-point costs
+		double[][] inverseSimilarities = new double[similarities.length][similarities[0].length];
+		for (int i=0;i<similarities.length;i++) {
+			for (int j=0;j<similarities[i].length;j++) {
+				double inverseSimilarity = 2;
+				if (similarities[i][j] != 0) inverseSimilarity = 1/(double)similarities[i][j];
+				inverseSimilarities[i][j] = inverseSimilarity;
+			}
+		}
+		return new HungarianAlgorithm(inverseSimilarities).execute();
+	}
+	
 	@SuppressWarnings("unchecked")
 	protected void setEAttributeValue(EObject eObject, EAttribute eAttribute, String attributeName, String value) {
 		if (eAttribute.isMany()) {
@@ -414,8 +815,10 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 			Object eValue = getEValue(eAttribute, attributeName, value);
 			if (eValue == null) return;
 			eObject.eSet(eAttribute, eValue);
+			// Names are registered even if the EObject has an id, so
+			// that references by name resolve to it too
 			if (eAttribute.isID() || "name".equalsIgnoreCase(eAttribute.getName())) {
-				if (!eObjectIdManager.hasId(eObject)) eObjectIdManager.setEObjectId(eObject, value);
+				eObjectIdManager.setEObjectId(eObject, value);
 			}
 		}
 	}
@@ -431,49 +834,39 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		}
 	}
 	
-	protected List<EStructuralFeature> getCandidateStructuralFeaturesForAttribute(EClass eClass) {
-		List<EStructuralFeature> eStructuralFeatures = new ArrayList<EStructuralFeature>();
-		for (EStructuralFeature sf : eClass.getEAllStructuralFeatures()) {
-			if (sf.isChangeable() && (sf instanceof EAttribute || ((sf instanceof EReference) && !((EReference) sf).isContainment()))) {
-				eStructuralFeatures.add(sf);
+	// The index is looked up once per load, and again whenever
+	// a processing instruction registers a package
+	protected MetamodelIndex getMetamodelIndex() {
+		if (metamodelIndex == null) {
+			metamodelIndex = MetamodelIndex.forRegistry(getResourceSet().getPackageRegistry());
+			if (nameResolutionCacheFile != null) {
+				try {
+					metamodelIndex.getNameResolutionCache().load(nameResolutionCacheFile);
+				}
+				catch (IOException ex) {
+					addParseWarning("Could not read name resolutions from " + nameResolutionCacheFile + ": " + ex.getMessage());
+				}
 			}
 		}
-		return eStructuralFeatures;
+		return metamodelIndex;
+	}
+	
+	protected List<EStructuralFeature> getCandidateStructuralFeaturesForAttribute(EClass eClass) {
+		return getMetamodelIndex().getAttributeCandidates(eClass);
 	}
 	
 	protected List<EClass> getAllConcreteEClasses() {
-		List<EClass> eClasses = new ArrayList<EClass>();
-		Iterator<Object> it = getResourceSet().getPackageRegistry().values().iterator();
-		while (it.hasNext()) {
-			EPackage ePackage = (EPackage) it.next();
-			for (EClassifier eClassifier : ePackage.getEClassifiers()) {
-				if (eClassifier instanceof EClass && !((EClass) eClassifier).isAbstract()) {
-					eClasses.add((EClass) eClassifier);
-				}
-			}
-		}
-		return eClasses;
+		return getMetamodelIndex().getConcreteEClasses();
 	}
 	
 	protected List<EClass> getAllSubtypes(EClass eClass) {
-		List<EClass> allSubtypes = allSubtypesCache.get(eClass);
-		if (allSubtypes == null) {
-			allSubtypes = new ArrayList<EClass>();
-			for (EClass candidate : getAllConcreteEClasses()) {
-				if (candidate.getEAllSuperTypes().contains(eClass)) {
-					allSubtypes.add(candidate);
-				}
-			}
-			if (!eClass.isAbstract()) allSubtypes.add(eClass);
-			allSubtypesCache.put(eClass, allSubtypes);
-		}
-		return allSubtypes;
+		return getMetamodelIndex().getAllSubtypes(eClass);
 	}
 	
 	protected EClass eClassForName(String name) {
 		EClass eClass = eClassCache.get(name);
 		if (eClass == null) {
-			eClass = (EClass) eNamedElementForName(name, getAllConcreteEClasses());
+			eClass = (EClass) eNamedElementForName(name, getMetamodelIndex().getConcreteEClassNames());
 			eClassCache.put(name, eClass);
 		}
 		return eClass;
@@ -481,8 +874,25 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 	}
 	
 	protected ENamedElement eNamedElementForName(String name, Collection<? extends ENamedElement> candidates) {
+		return eNamedElementForName(name, new NameIndex(candidates));
+	}
+	
+	protected ENamedElement eNamedElementForName(String name, NameIndex candidates) {
 		ENamedElement eNamedElement = eNamedElementForName(name, candidates, false);
-		if (eNamedElement == null) eNamedElement = eNamedElementForName(name, candidates, true);
+		if (eNamedElement == null) {
+			// Resolutions are only shared for the similarity
+			// of the default provider
+			if (sharedNameResolution && isDefaultStringSimilarity(stringSimilarityProvider)) {
+				NameResolutionCache nameResolutionCache = getMetamodelIndex().getNameResolutionCache();
+				int index = nameResolutionCache.get(candidates, name, fuzzyMatchingThreshold);
+				if (index == -2) {
+					index = getBestFuzzyMatch(name, candidates);
+					nameResolutionCache.put(candidates, name, fuzzyMatchingThreshold, index);
+				}
+				eNamedElement = index > -1 ? candidates.getElement(index) : null;
+			}
+			else eNamedElement = eNamedElementForName(name, candidates, true);
+		}
 		return eNamedElement;
 	}
 	
@@ -490,32 +900,65 @@ public class FlexmiResource extends ResourceImpl implements Handler {
 		return eObjectTraceManager;
 	}
 	
+	// FuzzyNameIndex relies on the similarity of the default provider (which is bounded)
+	protected boolean isDefaultStringSimilarity(StringSimilarityProvider stringSimilarityProvider) {
+		if (stringSimilarityProvider instanceof CachedStringSimilarityProvider) {
+			return isDefaultStringSimilarity(((CachedStringSimilarityProvider) stringSimilarityProvider).getDelegate());
+		}
+		return stringSimilarityProvider != null && stringSimilarityProvider.getClass() == DefaultStringSimilarityProvider.class;
+	}
+	
 	protected ENamedElement eNamedElementForName(String name, Collection<? extends ENamedElement> candidates, boolean fuzzy) {
+		return eNamedElementForName(name, new NameIndex(candidates), fuzzy);
+	}
+	
+	protected ENamedElement eNamedElementForName(String name, NameIndex candidates, boolean fuzzy) {
 		
 		if (fuzzy) {
-			int maxSimilarity = 0;
-			ENamedElement bestMatch = null;
-			for (ENamedElement candidate : candidates) {
-				int similarity = stringSimilarityProvider.getSimilarity(candidate.getName().toLowerCase(), name.toLowerCase());
-				if (similarity > maxSimilarity) {
-					maxSimilarity = similarity;
-					bestMatch = candidate;
-				}
-			}
-			
-			if (maxSimilarity == 0 && candidates.size() == 1) {
-				return candidates.iterator().next();
-			}
-			
-			return bestMatch;			
+			int index = getBestFuzzyMatch(name, candidates);
+			return index > -1 ? candidates.getElement(index) : null;
 		}
 		else {
-			for (ENamedElement candidate : candidates) {
-				if (candidate.getName().equalsIgnoreCase(name)) return candidate;
+			return candidates.get(name);
+		}
+	}
+	
+	/**
+	 * Returns the position of the candidate that best matches the
+	 * name, or -1 if no candidate matches it well enough
+	 */
+	protected int getBestFuzzyMatch(String name, NameIndex candidates) {
+		// Matches need a positive similarity that
+		// reaches the threshold (if there is one)
+		int minimumSimilarity = Math.max(1, fuzzyMatchingThreshold);
+		int bestMatch = -1;
+		String lowerCaseName = NameIndex.toLowerCase(name);
+		
+		if (candidates.size() >= FUZZY_INDEX_THRESHOLD && isDefaultStringSimilarity(stringSimilarityProvider)) {
+			return candidates.getFuzzyIndex().getBestMatch(lowerCaseName, (BoundedStringSimilarityProvider) stringSimilarityProvider, minimumSimilarity);
+		}
+		
+		// Other providers compute every similarity in full
+		BoundedStringSimilarityProvider boundedStringSimilarityProvider = null;
+		if (stringSimilarityProvider instanceof BoundedStringSimilarityProvider) {
+			boundedStringSimilarityProvider = (BoundedStringSimilarityProvider) stringSimilarityProvider;
+		}
+		
+		for (int i = 0; i < candidates.size(); i++) {
+			int similarity;
+			if (boundedStringSimilarityProvider != null) similarity = boundedStringSimilarityProvider.getSimilarity(candidates.getLowerCaseName(i), lowerCaseName, minimumSimilarity);
+			else similarity = stringSimilarityProvider.getSimilarity(candidates.getLowerCaseName(i), lowerCaseName);
+			if (similarity >= minimumSimilarity) {
+				minimumSimilarity = similarity + 1;
+				bestMatch = i;
 			}
 		}
 		
-		return null;
+		if (bestMatch == -1 && candidates.size() == 1 && fuzzyMatchingThreshold <= 0) {
+			return 0;
+		}
+		
+		return bestMatch;
 	}
 
 }
@@ -0,0 +1,244 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the best fuzzy match for a name among the (lower-case) names of a
+ * {@link NameIndex} without scoring every name, for similarities computed by
+ * the {@link DefaultStringSimilarityProvider}: the length of the longest
+ * common substring, doubled if the name starts with the candidate name.
+ * <p>
+ * Candidates that are prefixes of the name are found through the hash codes
+ * of the prefixes of the name and scored first. The remaining candidates cannot score more than their
+ * longest common substring with the name, which is at most one more than the
+ * number of positions of the name whose bigram also occurs in the candidate;
+ * candidates are scored in decreasing order of this bound until it drops
+ * below the best score so far. As with a linear scan, the first (in index
+ * order) of the candidates with the highest score is returned.
+ */
+public class FuzzyNameIndex {
+	
+	// Marks the counter of a candidate that has been scored as a prefix
+	protected static final int SCORED = -1;
+	
+	protected String[] names;
+	// Keyed by the String hash code of a name; lists the first index of
+	// each distinct name with that hash code
+	protected IntPostings firstIndicesByHash;
+	protected IntPostings candidatesByBigram;
+	// Lists the first index of the names that contain a character
+	protected IntPostings firstIndexByCharacter;
+	
+	public FuzzyNameIndex(String[] lowerCaseNames) {
+		this.names = lowerCaseNames;
+		
+		HashMap<String, Integer> firstIndexByName = new HashMap<String, Integer>();
+		HashMap<Integer, List<Integer>> firstIndicesByHash = new HashMap<Integer, List<Integer>>();
+		HashMap<Integer, List<Integer>> bigrams = new HashMap<Integer, List<Integer>>();
+		HashMap<Integer, List<Integer>> firstIndexByCharacter = new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (!firstIndexByName.containsKey(name)) {
+				firstIndexByName.put(name, i);
+				add(firstIndicesByHash, name.hashCode(), i);
+			}
+			for (int c = 0; c < name.length(); c++) {
+				if (!firstIndexByCharacter.containsKey((int) name.charAt(c))) add(firstIndexByCharacter, name.charAt(c), i);
+				if (c + 1 == name.length()) continue;
+				// Each candidate is listed once per bigram
+				add(bigrams, bigram(name, c), i);
+			}
+		}
+		
+		this.firstIndicesByHash = new IntPostings(firstIndicesByHash);
+		this.candidatesByBigram = new IntPostings(bigrams);
+		this.firstIndexByCharacter = new IntPostings(firstIndexByCharacter);
+	}
+	
+	protected static void add(HashMap<Integer, List<Integer>> postings, int key, int index) {
+		List<Integer> indices = postings.get(key);
+		if (indices == null) {
+			indices = new ArrayList<Integer>();
+			postings.put(key, indices);
+		}
+		if (indices.isEmpty() || indices.get(indices.size() - 1) != index) indices.add(index);
+	}
+	
+	protected static int bigram(String string, int index) {
+		return (string.charAt(index) << 16) | string.charAt(index + 1);
+	}
+	
+	/**
+	 * Returns the index of the best match for the (lower-case) name, or -1
+	 * if no candidate has a similarity of at least the minimum (which must be
+	 * positive) with it
+	 */
+	public int getBestMatch(String name, BoundedStringSimilarityProvider similarityProvider, int minimumSimilarity) {
+		if (name.length() == 0) return -1;
+		
+		int bestIndex = -1;
+		int bestSimilarity = 0;
+		Scratch scratch = Scratch.get(names.length);
+		int[] sharedBigrams = scratch.sharedBigrams;
+		
+		// Candidates that are prefixes of the name, found through the
+		// hash codes of the prefixes, which are computed incrementally;
+		// their counters are marked so that they are not scored again
+		int[] prefixes = scratch.prefixes;
+		int prefixCount = 0;
+		int hash = 0;
+		for (int length = 1; length <= name.length(); length++) {
+			hash = 31 * hash + name.charAt(length - 1);
+			int[] hashCandidates = firstIndicesByHash.get(hash);
+			if (hashCandidates == null) continue;
+			for (int index : hashCandidates) {
+				if (names[index].length() != length || !name.startsWith(names[index])) continue;
+				sharedBigrams[index] = SCORED;
+				prefixes[prefixCount++] = index;
+				int required = getRequiredSimilarity(index, bestIndex, bestSimilarity, minimumSimilarity);
+				int similarity = similarityProvider.getSimilarity(names[index], name, required);
+				if (similarity >= required) {
+					bestSimilarity = similarity;
+					bestIndex = index;
+				}
+			}
+		}
+		
+		// Other candidates that share at least one bigram with the name,
+		// and the upper bounds of their similarities
+		int[] touched = scratch.touched;
+		int size = 0;
+		for (int c = 0; c + 1 < name.length(); c++) {
+			int[] candidates = candidatesByBigram.get(bigram(name, c));
+			if (candidates == null) continue;
+			for (int candidate : candidates) {
+				if (sharedBigrams[candidate] == SCORED) continue;
+				if (sharedBigrams[candidate]++ == 0) touched[size++] = candidate;
+			}
+		}
+		
+		long[] boundedCandidates = scratch.boundedCandidates;
+		for (int i = 0; i < size; i++) {
+			int candidate = touched[i];
+			int bound = Math.min(sharedBigrams[candidate] + 1, Math.min(names[candidate].length(), name.length()));
+			sharedBigrams[candidate] = 0;
+			// Sorts by decreasing bound, then by increasing index
+			boundedCandidates[i] = ((long) (Integer.MAX_VALUE - bound) << 32) | candidate;
+		}
+		for (int i = 0; i < prefixCount; i++) {
+			sharedBigrams[prefixes[i]] = 0;
+		}
+		Arrays.sort(boundedCandidates, 0, size);
+		
+		for (int i = 0; i < size; i++) {
+			long boundedCandidate = boundedCandidates[i];
+			int bound = Integer.MAX_VALUE - (int) (boundedCandidate >>> 32);
+			int index = (int) boundedCandidate;
+			int required = getRequiredSimilarity(index, bestIndex, bestSimilarity, minimumSimilarity);
+			if (bound < required) {
+				// Later candidates have lower bounds, or the same
+				// bound and a higher index
+				if (bound < bestSimilarity || bound < minimumSimilarity) break;
+				continue;
+			}
+			int similarity = similarityProvider.getSimilarity(names[index], name, required);
+			if (similarity >= required) {
+				bestSimilarity = similarity;
+				bestIndex = index;
+			}
+		}
+		
+		// Without a common substring of two or more characters, the best
+		// match is the first candidate that shares a character with the name
+		if (bestSimilarity <= 1 && minimumSimilarity <= 1) {
+			for (int c = 0; c < name.length(); c++) {
+				int[] indices = firstIndexByCharacter.get(name.charAt(c));
+				if (indices != null && (bestIndex == -1 || indices[0] < bestIndex)) {
+					bestIndex = indices[0];
+				}
+			}
+		}
+		
+		return bestIndex;
+	}
+	
+	// Per-candidate counters and buffers, reused across the searches of
+	// a thread (indices are shared between threads); counters are reset
+	// to zero as soon as they have been read
+	protected static class Scratch {
+		
+		protected static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+		
+		protected int[] sharedBigrams;
+		protected int[] touched;
+		protected int[] prefixes;
+		protected long[] boundedCandidates;
+		
+		public static Scratch get(int candidates) {
+			Scratch instance = scratch.get();
+			if (instance == null || instance.touched.length < candidates) {
+				instance = new Scratch();
+				instance.sharedBigrams = new int[candidates];
+				instance.touched = new int[candidates];
+				instance.prefixes = new int[candidates];
+				instance.boundedCandidates = new long[candidates];
+				scratch.set(instance);
+			}
+			return instance;
+		}
+	}
+	
+	/**
+	 * An open-addressing map from int keys to sorted arrays of
+	 * candidate indices, which looks keys up without boxing them
+	 */
+	protected static class IntPostings {
+		
+		protected int[] keys;
+		protected int[][] values;
+		protected int mask;
+		
+		public IntPostings(Map<Integer, List<Integer>> postings) {
+			int capacity = 2;
+			while (capacity < postings.size() * 2) capacity <<= 1;
+			keys = new int[capacity];
+			values = new int[capacity][];
+			mask = capacity - 1;
+			for (Map.Entry<Integer, List<Integer>> entry : postings.entrySet()) {
+				int[] indices = new int[entry.getValue().size()];
+				for (int i = 0; i < indices.length; i++) indices[i] = entry.getValue().get(i);
+				int slot = slot(entry.getKey());
+				while (values[slot] != null) slot = (slot + 1) & mask;
+				keys[slot] = entry.getKey();
+				values[slot] = indices;
+			}
+		}
+		
+		public int[] get(int key) {
+			for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) return values[slot];
+			}
+			return null;
+		}
+		
+		protected int slot(int key) {
+			// Spreads the characters of bigrams over the low bits
+			int hash = key * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+	}
+	
+	// The similarity with which a candidate would replace the best match:
+	// the minimum if there is none, otherwise the similarity of the best
+	// match for earlier candidates, which win ties, and more for later ones
+	protected int getRequiredSimilarity(int index, int bestIndex, int bestSimilarity, int minimumSimilarity) {
+		if (bestIndex == -1) return minimumSimilarity;
+		if (index < bestIndex) return bestSimilarity;
+		return bestSimilarity + 1;
+	}
+
+}
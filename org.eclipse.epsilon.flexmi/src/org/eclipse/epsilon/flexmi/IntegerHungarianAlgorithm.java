@@ -0,0 +1,324 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.Arrays;
+
+/**
+ * The {@link HungarianAlgorithm} over integer costs, working on buffers
+ * that are reused across calls and grow to the largest matrix seen so far,
+ * so that repeated solves allocate nothing. Costs are set one by one
+ * after {@link #reset(int, int)}, and the assignment is written to an
+ * array of the caller. The algorithm takes the same steps as the original
+ * on the same (scaled) costs, so it returns the same assignment, except
+ * where several assignments have exactly the same cost and the choice of
+ * the original depends on the rounding of its floating-point costs. Such
+ * ties are reported by {@link #hasUniqueAssignment()}.
+ * <p>
+ * An instance must not be used by more than one thread at a time.
+ */
+public class IntegerHungarianAlgorithm {
+	
+	// Larger costs could overflow the sums of the algorithm
+	public static final long MAX_COST = Long.MAX_VALUE >> 16;
+	
+	protected static final long INFINITY = Long.MAX_VALUE;
+	
+	protected int rows, cols, dim;
+	protected long[] costMatrix = new long[0];
+	protected long[] labelByWorker = new long[0], labelByJob = new long[0];
+	protected int[] minSlackWorkerByJob = new int[0];
+	protected long[] minSlackValueByJob = new long[0];
+	protected int[] matchJobByWorker = new int[0], matchWorkerByJob = new int[0];
+	protected int[] parentWorkerByCommittedJob = new int[0];
+	protected boolean[] committedWorkers = new boolean[0];
+	protected long[] minByJob = new long[0];
+	protected int[] queue = new int[0];
+	protected boolean[] reached = new boolean[0];
+	
+	/**
+	 * Prepares the buffers for a matrix of the given size, with all costs
+	 * set to 0. Matrices with more than 64 rows or columns are not supported,
+	 * as the costs of their assignments could overflow.
+	 */
+	public void reset(int rows, int cols) {
+		if (rows <= 0 || cols <= 0 || rows > 64 || cols > 64) throw new IllegalArgumentException("Unsupported matrix size " + rows + "x" + cols);
+		this.rows = rows;
+		this.cols = cols;
+		this.dim = Math.max(rows, cols);
+		if (labelByWorker.length < dim) {
+			costMatrix = new long[dim * dim];
+			labelByWorker = new long[dim];
+			labelByJob = new long[dim];
+			minSlackWorkerByJob = new int[dim];
+			minSlackValueByJob = new long[dim];
+			matchJobByWorker = new int[dim];
+			matchWorkerByJob = new int[dim];
+			parentWorkerByCommittedJob = new int[dim];
+			committedWorkers = new boolean[dim];
+			minByJob = new long[dim];
+			queue = new int[dim];
+			reached = new boolean[dim];
+		}
+		Arrays.fill(costMatrix, 0, dim * dim, 0);
+		Arrays.fill(labelByWorker, 0, dim, 0);
+		Arrays.fill(labelByJob, 0, dim, 0);
+		Arrays.fill(matchJobByWorker, 0, dim, -1);
+		Arrays.fill(matchWorkerByJob, 0, dim, -1);
+	}
+	
+	/**
+	 * Prepares the buffers for the costs that FlexmiResource assigns
+	 * attributes to features by (1/similarity, or 2 for no similarity),
+	 * scaled by the least common multiple of the similarities so that they
+	 * are integers. Returns false (leaving the buffers in an undefined state)
+	 * if there are negative similarities or the scaled costs would be too
+	 * large, which can happen for matrices with many different similarities.
+	 */
+	public boolean resetToInverseSimilarities(int[][] similarities) {
+		long scale = 1;
+		for (int[] row : similarities) {
+			for (int similarity : row) {
+				if (similarity < 0) return false;
+				if (similarity == 0 || scale % similarity == 0) continue;
+				scale = scale / gcd(scale, similarity) * similarity;
+				if (scale > MAX_COST / 2) return false;
+			}
+		}
+		
+		reset(similarities.length, similarities[0].length);
+		for (int w = 0; w < rows; w++) {
+			for (int j = 0; j < cols; j++) {
+				int similarity = similarities[w][j];
+				setCost(w, j, similarity > 0 ? scale / similarity : 2 * scale);
+			}
+		}
+		return true;
+	}
+	
+	protected static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+	
+	/**
+	 * Sets the cost of assigning worker w to job j, which
+	 * must be between 0 and {@link #MAX_COST}
+	 */
+	public void setCost(int w, int j, long cost) {
+		if (cost < 0 || cost > MAX_COST) throw new IllegalArgumentException("Unsupported cost " + cost);
+		costMatrix[w * dim + j] = cost;
+	}
+	
+	/**
+	 * Writes the minimum cost matching of workers to jobs to the first rows
+	 * positions of the assignment, -1 indicating an unassigned worker
+	 */
+	public void execute(int[] assignment) {
+		reduce();
+		computeInitialFeasibleSolution();
+		greedyMatch();
+		
+		int w = fetchUnmatchedWorker();
+		while (w < dim) {
+			initializePhase(w);
+			executePhase();
+			w = fetchUnmatchedWorker();
+		}
+		for (w = 0; w < rows; w++) {
+			assignment[w] = matchJobByWorker[w] < cols ? matchJobByWorker[w] : -1;
+		}
+	}
+	
+	/**
+	 * Returns whether the assignment written by the last {@link #execute(int[])}
+	 * is the only one of minimum cost, i.e. no other assignment of the same
+	 * cost assigns any of the rows to a different column or leaves a
+	 * different row unassigned
+	 */
+	public boolean hasUniqueAssignment() {
+		// Other matchings of minimum cost differ from this one by cycles of
+		// tight edges, along which each worker moves to the job of the next.
+		// A move matters unless it is between two padding jobs or of a
+		// padding worker.
+		for (int w = 0; w < rows; w++) {
+			for (int j = 0; j < dim; j++) {
+				if (j == matchJobByWorker[w] || (j >= cols && matchJobByWorker[w] >= cols) || !isTight(w, j)) continue;
+				if (canMove(matchWorkerByJob[j], w)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns whether a chain of workers starting with from, each moving
+	 * to the job of the next along a tight edge, can end with to
+	 */
+	protected boolean canMove(int from, int to) {
+		Arrays.fill(reached, 0, dim, false);
+		reached[from] = true;
+		queue[0] = from;
+		int head = 0, tail = 1;
+		while (head < tail) {
+			int worker = queue[head++];
+			if (worker == to) return true;
+			for (int next = 0; next < dim; next++) {
+				if (!reached[next] && isTight(worker, matchJobByWorker[next])) {
+					reached[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return false;
+	}
+	
+	protected boolean isTight(int w, int j) {
+		return costMatrix[w * dim + j] - labelByWorker[w] - labelByJob[j] == 0;
+	}
+	
+	protected void computeInitialFeasibleSolution() {
+		for (int j = 0; j < dim; j++) {
+			labelByJob[j] = INFINITY;
+		}
+		for (int w = 0; w < dim; w++) {
+			for (int j = 0; j < dim; j++) {
+				if (costMatrix[w * dim + j] < labelByJob[j]) {
+					labelByJob[j] = costMatrix[w * dim + j];
+				}
+			}
+		}
+	}
+	
+	protected void executePhase() {
+		while (true) {
+			int minSlackWorker = -1, minSlackJob = -1;
+			long minSlackValue = INFINITY;
+			for (int j = 0; j < dim; j++) {
+				if (parentWorkerByCommittedJob[j] == -1) {
+					if (minSlackValueByJob[j] < minSlackValue) {
+						minSlackValue = minSlackValueByJob[j];
+						minSlackWorker = minSlackWorkerByJob[j];
+						minSlackJob = j;
+					}
+				}
+			}
+			if (minSlackValue > 0) {
+				updateLabeling(minSlackValue);
+			}
+			parentWorkerByCommittedJob[minSlackJob] = minSlackWorker;
+			if (matchWorkerByJob[minSlackJob] == -1) {
+				// An augmenting path has been found
+				int committedJob = minSlackJob;
+				int parentWorker = parentWorkerByCommittedJob[committedJob];
+				while (true) {
+					int temp = matchJobByWorker[parentWorker];
+					match(parentWorker, committedJob);
+					committedJob = temp;
+					if (committedJob == -1) {
+						break;
+					}
+					parentWorker = parentWorkerByCommittedJob[committedJob];
+				}
+				return;
+			}
+			else {
+				// Update slack values since we increased the
+				// size of the committed workers set
+				int worker = matchWorkerByJob[minSlackJob];
+				committedWorkers[worker] = true;
+				for (int j = 0; j < dim; j++) {
+					if (parentWorkerByCommittedJob[j] == -1) {
+						long slack = costMatrix[worker * dim + j] - labelByWorker[worker] - labelByJob[j];
+						if (minSlackValueByJob[j] > slack) {
+							minSlackValueByJob[j] = slack;
+							minSlackWorkerByJob[j] = worker;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	protected int fetchUnmatchedWorker() {
+		int w;
+		for (w = 0; w < dim; w++) {
+			if (matchJobByWorker[w] == -1) {
+				break;
+			}
+		}
+		return w;
+	}
+	
+	protected void greedyMatch() {
+		for (int w = 0; w < dim; w++) {
+			for (int j = 0; j < dim; j++) {
+				if (matchJobByWorker[w] == -1 && matchWorkerByJob[j] == -1 && costMatrix[w * dim + j] - labelByWorker[w] - labelByJob[j] == 0) {
+					match(w, j);
+				}
+			}
+		}
+	}
+	
+	protected void initializePhase(int w) {
+		Arrays.fill(committedWorkers, 0, dim, false);
+		Arrays.fill(parentWorkerByCommittedJob, 0, dim, -1);
+		committedWorkers[w] = true;
+		for (int j = 0; j < dim; j++) {
+			minSlackValueByJob[j] = costMatrix[w * dim + j] - labelByWorker[w] - labelByJob[j];
+			minSlackWorkerByJob[j] = w;
+		}
+	}
+	
+	protected void match(int w, int j) {
+		matchJobByWorker[w] = j;
+		matchWorkerByJob[j] = w;
+	}
+	
+	protected void reduce() {
+		for (int w = 0; w < dim; w++) {
+			long min = INFINITY;
+			for (int j = 0; j < dim; j++) {
+				if (costMatrix[w * dim + j] < min) {
+					min = costMatrix[w * dim + j];
+				}
+			}
+			for (int j = 0; j < dim; j++) {
+				costMatrix[w * dim + j] -= min;
+			}
+		}
+		for (int j = 0; j < dim; j++) {
+			minByJob[j] = INFINITY;
+		}
+		for (int w = 0; w < dim; w++) {
+			for (int j = 0; j < dim; j++) {
+				if (costMatrix[w * dim + j] < minByJob[j]) {
+					minByJob[j] = costMatrix[w * dim + j];
+				}
+			}
+		}
+		for (int w = 0; w < dim; w++) {
+			for (int j = 0; j < dim; j++) {
+				costMatrix[w * dim + j] -= minByJob[j];
+			}
+		}
+	}
+	
+	protected void updateLabeling(long slack) {
+		for (int w = 0; w < dim; w++) {
+			if (committedWorkers[w]) {
+				labelByWorker[w] += slack;
+			}
+		}
+		for (int j = 0; j < dim; j++) {
+			if (parentWorkerByCommittedJob[j] != -1) {
+				labelByJob[j] -= slack;
+			}
+			else {
+				minSlackValueByJob[j] -= slack;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,402 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.impl.EPackageImpl;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * An immutable index of the classes of the EPackages in a package registry:
+ * the concrete classes, the concrete subtypes of each class, and the
+ * features of each concrete class that Flexmi matches against. Indices
+ * are shared between the resources (and threads) that use the same
+ * registry, which only holds on to its index weakly. A new index is built
+ * when packages are added to or removed from the registry, or when a
+ * dynamic package of the index changes.
+ */
+public class MetamodelIndex {
+	
+	// Registries are maps, so they are looked up by identity rather than
+	// through their (content-based) equals and hashCode
+	protected static final Map<RegistryReference, MetamodelIndex> indices = new HashMap<RegistryReference, MetamodelIndex>();
+	protected static final ReferenceQueue<EPackage.Registry> collectedRegistries = new ReferenceQueue<EPackage.Registry>();
+	
+	protected final List<EClass> concreteEClasses;
+	protected final Map<EClass, List<EClass>> allSubtypes;
+	protected final Map<EClass, List<EStructuralFeature>> attributeCandidates;
+	protected final Map<EClass, Set<EClass>> containmentCandidates;
+	protected final NameIndex concreteEClassNames;
+	
+	// Name indices are computed on demand; concurrent computations
+	// of the same index are harmless
+	protected final ConcurrentHashMap<EClass, NameIndex> subtypeNames = new ConcurrentHashMap<EClass, NameIndex>();
+	protected final ConcurrentHashMap<EClass, NameIndex> containmentCandidateNames = new ConcurrentHashMap<EClass, NameIndex>();
+	protected final ConcurrentHashMap<EClass, NameIndex> attributeNames = new ConcurrentHashMap<EClass, NameIndex>();
+	protected final ConcurrentHashMap<EClass, NameIndex> containmentNames = new ConcurrentHashMap<EClass, NameIndex>();
+	protected final NameResolutionCache nameResolutionCache = new NameResolutionCache();
+	protected final List<EPackage> ePackages;
+	protected volatile boolean stale = false;
+	protected PackageSet packageSet;
+	protected List<ChangeTracker> changeTrackers = new ArrayList<ChangeTracker>();
+	
+	/**
+	 * Returns the (possibly shared) index of the packages currently
+	 * in the registry
+	 */
+	public static MetamodelIndex forRegistry(EPackage.Registry registry) {
+		PackageSet packageSet = new PackageSet(registry);
+		synchronized (indices) {
+			Reference<? extends EPackage.Registry> collectedRegistry;
+			while ((collectedRegistry = collectedRegistries.poll()) != null) {
+				MetamodelIndex index = indices.remove(collectedRegistry);
+				if (index != null) index.stopTrackingChanges();
+			}
+			
+			RegistryReference registryReference = new RegistryReference(registry, null);
+			MetamodelIndex index = indices.get(registryReference);
+			if (index == null || index.isStale() || !index.packageSet.equals(packageSet)) {
+				if (index != null) index.stopTrackingChanges();
+				index = new MetamodelIndex(packageSet.ePackages);
+				index.packageSet = packageSet;
+				index.startTrackingChanges();
+				indices.put(new RegistryReference(registry, collectedRegistries), index);
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * Returns whether a package of the index has changed since the index
+	 * was built. Only dynamic packages are tracked, as generated packages
+	 * are not expected to change.
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+	
+	// Called with the lock on the indices, like stopTrackingChanges()
+	protected void startTrackingChanges() {
+		for (EPackage ePackage : ePackages) {
+			if (ePackage.getClass() != EPackageImpl.class) continue;
+			ChangeTracker changeTracker = (ChangeTracker) EcoreUtil.getExistingAdapter(ePackage, ChangeTracker.class);
+			if (changeTracker == null) {
+				changeTracker = new ChangeTracker(ePackage);
+				ePackage.eAdapters().add(changeTracker);
+			}
+			changeTracker.addIndex(this);
+			changeTrackers.add(changeTracker);
+		}
+	}
+	
+	protected void stopTrackingChanges() {
+		for (ChangeTracker changeTracker : changeTrackers) {
+			if (changeTracker.removeIndex(this)) {
+				changeTracker.ePackage.eAdapters().remove(changeTracker);
+			}
+		}
+		changeTrackers.clear();
+	}
+	
+	protected MetamodelIndex(List<EPackage> ePackages) {
+		this.ePackages = ePackages;
+		List<EClass> concreteEClasses = new ArrayList<EClass>();
+		for (EPackage ePackage : ePackages) {
+			for (EClassifier eClassifier : ePackage.getEClassifiers()) {
+				if (eClassifier instanceof EClass && !((EClass) eClassifier).isAbstract()) {
+					concreteEClasses.add((EClass) eClassifier);
+				}
+			}
+		}
+		this.concreteEClasses = Collections.unmodifiableList(concreteEClasses);
+		this.concreteEClassNames = new NameIndex(concreteEClasses, "classes");
+		
+		// Subtypes are listed in the order of the concrete classes,
+		// followed by the class itself if it is concrete
+		Map<EClass, List<EClass>> allSubtypes = new HashMap<EClass, List<EClass>>();
+		for (EClass eClass : concreteEClasses) {
+			for (EClass superType : eClass.getEAllSuperTypes()) {
+				List<EClass> subtypes = allSubtypes.get(superType);
+				if (subtypes == null) {
+					subtypes = new ArrayList<EClass>();
+					allSubtypes.put(superType, subtypes);
+				}
+				subtypes.add(eClass);
+			}
+		}
+		for (EClass eClass : concreteEClasses) {
+			if (!allSubtypes.containsKey(eClass)) allSubtypes.put(eClass, new ArrayList<EClass>());
+		}
+		for (Map.Entry<EClass, List<EClass>> entry : allSubtypes.entrySet()) {
+			if (!entry.getKey().isAbstract()) entry.getValue().add(entry.getKey());
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.allSubtypes = allSubtypes;
+		
+		Map<EClass, List<EStructuralFeature>> attributeCandidates = new HashMap<EClass, List<EStructuralFeature>>();
+		Map<EClass, Set<EClass>> containmentCandidates = new HashMap<EClass, Set<EClass>>();
+		for (EClass eClass : concreteEClasses) {
+			attributeCandidates.put(eClass, computeAttributeCandidates(eClass));
+			containmentCandidates.put(eClass, computeContainmentCandidates(eClass));
+		}
+		this.attributeCandidates = attributeCandidates;
+		this.containmentCandidates = containmentCandidates;
+	}
+	
+	public List<EClass> getConcreteEClasses() {
+		return concreteEClasses;
+	}
+	
+	/**
+	 * Returns the concrete classes of the index that are subtypes
+	 * of the class, including the class itself if it is concrete
+	 */
+	public List<EClass> getAllSubtypes(EClass eClass) {
+		List<EClass> subtypes = allSubtypes.get(eClass);
+		if (subtypes != null) return subtypes;
+		if (eClass.isAbstract()) return Collections.emptyList();
+		return Collections.singletonList(eClass);
+	}
+	
+	/**
+	 * Returns the changeable attributes and non-containment
+	 * references of the class
+	 */
+	public List<EStructuralFeature> getAttributeCandidates(EClass eClass) {
+		List<EStructuralFeature> candidates = attributeCandidates.get(eClass);
+		if (candidates != null) return candidates;
+		return computeAttributeCandidates(eClass);
+	}
+	
+	/**
+	 * Returns the concrete classes whose instances can be
+	 * contained in instances of the class
+	 */
+	public Set<EClass> getContainmentCandidates(EClass eClass) {
+		Set<EClass> candidates = containmentCandidates.get(eClass);
+		if (candidates != null) return candidates;
+		return computeContainmentCandidates(eClass);
+	}
+	
+	public NameIndex getConcreteEClassNames() {
+		return concreteEClassNames;
+	}
+	
+	/**
+	 * Returns the names of {@link #getAllSubtypes(EClass)}
+	 */
+	public NameIndex getSubtypeNames(EClass eClass) {
+		NameIndex names = subtypeNames.get(eClass);
+		if (names == null) {
+			names = new NameIndex(getAllSubtypes(eClass), "subtypes " + getId(eClass));
+			subtypeNames.put(eClass, names);
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the names of {@link #getContainmentCandidates(EClass)}
+	 */
+	public NameIndex getContainmentCandidateNames(EClass eClass) {
+		NameIndex names = containmentCandidateNames.get(eClass);
+		if (names == null) {
+			names = new NameIndex(getContainmentCandidates(eClass), "containmentCandidates " + getId(eClass));
+			containmentCandidateNames.put(eClass, names);
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the names of all the attributes of the class
+	 */
+	public NameIndex getAttributeNames(EClass eClass) {
+		NameIndex names = attributeNames.get(eClass);
+		if (names == null) {
+			names = new NameIndex(eClass.getEAllAttributes(), "attributes " + getId(eClass));
+			attributeNames.put(eClass, names);
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the names of all the containment references of the class
+	 */
+	public NameIndex getContainmentNames(EClass eClass) {
+		NameIndex names = containmentNames.get(eClass);
+		if (names == null) {
+			names = new NameIndex(eClass.getEAllContainments(), "containments " + getId(eClass));
+			containmentNames.put(eClass, names);
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the fuzzy name resolutions shared by
+	 * the resources that use this index
+	 */
+	public NameResolutionCache getNameResolutionCache() {
+		return nameResolutionCache;
+	}
+	
+	// Identifies the name indices of a class
+	protected String getId(EClass eClass) {
+		EPackage ePackage = eClass.getEPackage();
+		return (ePackage != null ? ePackage.getNsURI() : "") + "#" + eClass.getName();
+	}
+	
+	protected List<EStructuralFeature> computeAttributeCandidates(EClass eClass) {
+		List<EStructuralFeature> eStructuralFeatures = new ArrayList<EStructuralFeature>();
+		for (EStructuralFeature sf : eClass.getEAllStructuralFeatures()) {
+			if (sf.isChangeable() && (sf instanceof EAttribute || ((sf instanceof EReference) && !((EReference) sf).isContainment()))) {
+				eStructuralFeatures.add(sf);
+			}
+		}
+		return Collections.unmodifiableList(eStructuralFeatures);
+	}
+	
+	// Candidates are sorted by their qualified names, so that the
+	// fingerprints of their name indices are the same in every process
+	protected Set<EClass> computeContainmentCandidates(EClass eClass) {
+		Set<EClass> candidates = new LinkedHashSet<EClass>();
+		for (EReference eReference : eClass.getEAllContainments()) {
+			candidates.addAll(getAllSubtypes(eReference.getEReferenceType()));
+		}
+		List<EClass> sorted = new ArrayList<EClass>(candidates);
+		Collections.sort(sorted, new Comparator<EClass>() {
+			@Override
+			public int compare(EClass one, EClass other) {
+				return getId(one).compareTo(getId(other));
+			}
+		});
+		return Collections.unmodifiableSet(new LinkedHashSet<EClass>(sorted));
+	}
+	
+	/**
+	 * Marks the indices of a package as stale when anything in it changes.
+	 * A package has (at most) one tracker, shared by the indices that
+	 * contain it, which is removed when the last of them stops tracking
+	 * changes. Trackers are attached to packages that may outlive the
+	 * indices, so they only refer to them weakly.
+	 */
+	protected static class ChangeTracker extends EContentAdapter {
+		
+		protected List<WeakReference<MetamodelIndex>> dependentIndices = new CopyOnWriteArrayList<WeakReference<MetamodelIndex>>();
+		protected EPackage ePackage;
+		
+		public ChangeTracker(EPackage ePackage) {
+			this.ePackage = ePackage;
+		}
+		
+		public void addIndex(MetamodelIndex index) {
+			dependentIndices.add(new WeakReference<MetamodelIndex>(index));
+		}
+		
+		/**
+		 * Stops tracking changes for the index (and for collected indices),
+		 * and returns whether no indices are left
+		 */
+		public boolean removeIndex(MetamodelIndex index) {
+			for (WeakReference<MetamodelIndex> reference : dependentIndices) {
+				MetamodelIndex referencedIndex = reference.get();
+				if (referencedIndex == null || referencedIndex == index) dependentIndices.remove(reference);
+			}
+			return dependentIndices.isEmpty();
+		}
+		
+		@Override
+		public boolean isAdapterForType(Object type) {
+			return type == ChangeTracker.class;
+		}
+		
+		@Override
+		public void notifyChanged(Notification notification) {
+			super.notifyChanged(notification);
+			if (notification.isTouch()) return;
+			for (WeakReference<MetamodelIndex> reference : dependentIndices) {
+				MetamodelIndex index = reference.get();
+				if (index != null) index.stale = true;
+			}
+		}
+	}
+	
+	/**
+	 * A weak reference to a registry, compared by the identity of the registry
+	 */
+	protected static class RegistryReference extends WeakReference<EPackage.Registry> {
+		
+		protected int hashCode;
+		
+		public RegistryReference(EPackage.Registry registry, ReferenceQueue<EPackage.Registry> queue) {
+			super(registry, queue);
+			this.hashCode = System.identityHashCode(registry);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (other == this) return true;
+			if (!(other instanceof RegistryReference)) return false;
+			EPackage.Registry registry = get();
+			return registry != null && registry == ((RegistryReference) other).get();
+		}
+	}
+	
+	/**
+	 * The packages of a registry, compared by identity
+	 */
+	protected static class PackageSet {
+		
+		protected List<EPackage> ePackages = new ArrayList<EPackage>();
+		protected int hashCode = 1;
+		
+		public PackageSet(EPackage.Registry registry) {
+			Iterator<Object> it = registry.values().iterator();
+			while (it.hasNext()) {
+				EPackage ePackage = (EPackage) it.next();
+				ePackages.add(ePackage);
+				hashCode = 31 * hashCode + System.identityHashCode(ePackage);
+			}
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof PackageSet)) return false;
+			List<EPackage> otherEPackages = ((PackageSet) other).ePackages;
+			if (otherEPackages.size() != ePackages.size()) return false;
+			for (int i = 0; i < ePackages.size(); i++) {
+				if (ePackages.get(i) != otherEPackages.get(i)) return false;
+			}
+			return true;
+		}
+	}
+
+}
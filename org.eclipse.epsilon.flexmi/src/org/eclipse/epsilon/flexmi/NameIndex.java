@@ -0,0 +1,95 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+
+import org.eclipse.emf.ecore.ENamedElement;
+
+/**
+ * An immutable index of a collection of named elements by (case-insensitive)
+ * name. The elements and their lower-case names are also kept in the order of
+ * the collection, for matching names that are not in the index. Indices
+ * that are shared through a {@link MetamodelIndex} have an id, which (with
+ * the fingerprint of the names) identifies them across processes.
+ */
+public class NameIndex {
+	
+	protected ENamedElement[] elements;
+	protected String[] lowerCaseNames;
+	protected HashMap<String, ENamedElement> byName = new HashMap<String, ENamedElement>();
+	protected HashMap<String, ENamedElement> byLowerCaseName = new HashMap<String, ENamedElement>();
+	protected volatile FuzzyNameIndex fuzzyIndex = null;
+	protected String id;
+	protected int fingerprint = 1;
+	
+	public NameIndex(Collection<? extends ENamedElement> candidates) {
+		this(candidates, null);
+	}
+	
+	public NameIndex(Collection<? extends ENamedElement> candidates, String id) {
+		this.id = id;
+		elements = candidates.toArray(new ENamedElement[candidates.size()]);
+		lowerCaseNames = new String[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			lowerCaseNames[i] = toLowerCase(elements[i].getName());
+			fingerprint = 31 * fingerprint + elements[i].getName().hashCode();
+			
+			// The first element with a given (case-insensitive) name wins;
+			// its exact name is indexed too, so that lookups by the exact
+			// name don't need to convert it to lower case
+			if (!byLowerCaseName.containsKey(lowerCaseNames[i])) {
+				byLowerCaseName.put(lowerCaseNames[i], elements[i]);
+				byName.put(elements[i].getName(), elements[i]);
+			}
+		}
+	}
+	
+	public static String toLowerCase(String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Returns the first element whose name matches the
+	 * name (ignoring case), or null if there is none
+	 */
+	public ENamedElement get(String name) {
+		ENamedElement element = byName.get(name);
+		if (element == null) element = byLowerCaseName.get(toLowerCase(name));
+		return element;
+	}
+	
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * Returns a hash of the names of the
+	 * elements, in order
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+	
+	public int size() {
+		return elements.length;
+	}
+	
+	public ENamedElement getElement(int i) {
+		return elements[i];
+	}
+	
+	public String getLowerCaseName(int i) {
+		return lowerCaseNames[i];
+	}
+	
+	/**
+	 * Returns a {@link FuzzyNameIndex} of the lower-case names,
+	 * which is created on first use
+	 */
+	public FuzzyNameIndex getFuzzyIndex() {
+		if (fuzzyIndex == null) fuzzyIndex = new FuzzyNameIndex(lowerCaseNames);
+		return fuzzyIndex;
+	}
+	
+}
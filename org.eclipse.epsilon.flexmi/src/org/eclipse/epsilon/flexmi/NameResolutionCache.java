@@ -0,0 +1,272 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.emf.ecore.ENamedElement;
+
+/**
+ * Remembers the elements that names resolved to through fuzzy matching,
+ * so that resources loaded against the same {@link MetamodelIndex} (see
+ * {@link MetamodelIndex#getNameResolutionCache()}) don't repeat the search.
+ * Resolutions are recorded against the id and the fingerprint of the
+ * {@link NameIndex} that was searched, so that they can be written to a
+ * file and read back by another process: a resolution only applies to an
+ * index with the same id and fingerprint (i.e. the same candidate names,
+ * in the same order). The cache holds up to a given number of resolutions,
+ * evicting them beyond that with the clock algorithm: a hand sweeps over
+ * the resolutions, giving those that have been used since it last passed
+ * a second chance, and evicting the first that has not.
+ */
+public class NameResolutionCache {
+	
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	protected static final String SEPARATOR = "\t";
+	public static final int DEFAULT_CAPACITY = 65536;
+	
+	protected ConcurrentHashMap<Key, Resolution> resolutions = new ConcurrentHashMap<Key, Resolution>();
+	protected int capacity;
+	protected Set<String> loadedFiles = new HashSet<String>();
+	// The cache needs saving while the modifications differ from
+	// those at the start of the last successful save
+	protected AtomicLong modifications = new AtomicLong();
+	protected volatile long savedModifications = 0;
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong misses = new AtomicLong();
+	protected AtomicLong evictions = new AtomicLong();
+	protected Iterator<Map.Entry<Key, Resolution>> hand;
+	
+	public NameResolutionCache() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public NameResolutionCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+	
+	/**
+	 * Returns the position in the index of the element that the name
+	 * resolves to under the threshold, -1 if it resolves to none, or -2
+	 * if the resolution is not known
+	 */
+	public int get(NameIndex candidates, String name, int threshold) {
+		if (candidates.getId() != null) {
+			Resolution resolution = resolutions.get(new Key(candidates.getId(), name, threshold));
+			if (resolution != null && resolution.fingerprint == candidates.getFingerprint() && resolution.isValidFor(candidates)) {
+				resolution.referenced = true;
+				hits.incrementAndGet();
+				return resolution.position;
+			}
+		}
+		misses.incrementAndGet();
+		return -2;
+	}
+	
+	public void put(NameIndex candidates, String name, int threshold, int position) {
+		if (candidates.getId() == null) return;
+		String elementName = position > -1 ? candidates.getElement(position).getName() : "";
+		if (resolutions.put(new Key(candidates.getId(), name, threshold), new Resolution(candidates.getFingerprint(), position, elementName)) == null) {
+			evict();
+		}
+		modifications.incrementAndGet();
+	}
+	
+	protected void evict() {
+		if (resolutions.size() <= capacity) return;
+		synchronized (resolutions) {
+			while (resolutions.size() > capacity) {
+				if (hand == null || !hand.hasNext()) {
+					hand = resolutions.entrySet().iterator();
+					if (!hand.hasNext()) return;
+				}
+				Map.Entry<Key, Resolution> entry = hand.next();
+				Resolution resolution = entry.getValue();
+				if (resolution.referenced) {
+					resolution.referenced = false;
+				}
+				else if (resolutions.remove(entry.getKey(), resolution)) {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads the resolutions of a file written by {@link #save(File)},
+	 * unless they have been read already, and as far as they fit.
+	 * Missing files are ignored.
+	 */
+	public void load(File file) throws IOException {
+		synchronized (loadedFiles) {
+			if (!loadedFiles.add(file.getAbsolutePath()) || !file.exists()) return;
+		}
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while (resolutions.size() < capacity && (line = reader.readLine()) != null) {
+				String[] parts = line.split(SEPARATOR, -1);
+				if (parts.length != 6) continue;
+				try {
+					Key key = new Key(parts[0], parts[1], Integer.parseInt(parts[2]));
+					Resolution resolution = new Resolution(Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), parts[5]);
+					// Resolutions of this process take precedence
+					resolutions.putIfAbsent(key, resolution);
+				}
+				catch (NumberFormatException ex) {
+					// Skip malformed lines
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Writes all the resolutions to the file if there are any that
+	 * it may not contain. The resolutions are written to a temporary
+	 * file next to it, which then replaces the file as a whole, so that
+	 * concurrent readers never see a partial snapshot.
+	 */
+	public synchronized void save(File file) throws IOException {
+		long saving = modifications.get();
+		if (saving == savedModifications && file.exists()) return;
+		
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temporary = File.createTempFile(file.getName() + ".", ".tmp", directory);
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF8));
+			try {
+				for (Map.Entry<Key, Resolution> entry : resolutions.entrySet()) {
+					Key key = entry.getKey();
+					Resolution resolution = entry.getValue();
+					writer.write(key.indexId + SEPARATOR + key.name + SEPARATOR + key.threshold + SEPARATOR +
+							resolution.fingerprint + SEPARATOR + resolution.position + SEPARATOR + resolution.elementName);
+					writer.newLine();
+				}
+			}
+			finally {
+				writer.close();
+			}
+			replace(file, temporary);
+		}
+		finally {
+			temporary.delete();
+		}
+		savedModifications = saving;
+	}
+	
+	/**
+	 * Replaces the file with the temporary file. Where renaming does not
+	 * replace existing files (i.e. on Windows), the file is first moved
+	 * aside, and restored if the temporary file cannot take its place.
+	 */
+	protected void replace(File file, File temporary) throws IOException {
+		if (temporary.renameTo(file)) return;
+		if (!file.exists()) throw new IOException("Could not write " + file);
+		
+		File backup = File.createTempFile(file.getName() + ".", ".bak", temporary.getParentFile());
+		if (!backup.delete() || !file.renameTo(backup)) {
+			backup.delete();
+			throw new IOException("Could not replace " + file);
+		}
+		if (temporary.renameTo(file)) {
+			backup.delete();
+		}
+		else {
+			backup.renameTo(file);
+			throw new IOException("Could not write " + file);
+		}
+	}
+	
+	public void clear() {
+		resolutions.clear();
+		modifications.incrementAndGet();
+	}
+	
+	public int size() {
+		return resolutions.size();
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	@Override
+	public String toString() {
+		return getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions, " + size() + " resolutions";
+	}
+	
+	protected static class Key {
+		
+		protected String indexId;
+		protected String name;
+		protected int threshold;
+		protected int hashCode;
+		
+		public Key(String indexId, String name, int threshold) {
+			this.indexId = indexId;
+			this.name = name;
+			this.threshold = threshold;
+			this.hashCode = (31 * indexId.hashCode() + name.hashCode()) * 31 + threshold;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return hashCode == key.hashCode && threshold == key.threshold && name.equals(key.name) && indexId.equals(key.indexId);
+		}
+	}
+	
+	protected static class Resolution {
+		
+		protected int fingerprint;
+		protected int position;
+		protected String elementName;
+		// Whether the resolution has been used since the clock hand last passed it
+		protected volatile boolean referenced = false;
+		
+		public Resolution(int fingerprint, int position, String elementName) {
+			this.fingerprint = fingerprint;
+			this.position = position;
+			this.elementName = elementName;
+		}
+		
+		// Guards against fingerprint collisions
+		public boolean isValidFor(NameIndex candidates) {
+			if (position < 0) return position == -1;
+			if (position >= candidates.size()) return false;
+			ENamedElement element = candidates.getElement(position);
+			return elementName.equals(element.getName());
+		}
+	}
+
+}
@@ -0,0 +1,292 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.epsilon.flexmi.SubtreeMapper.MappedSubtrees;
+import org.eclipse.epsilon.flexmi.xml.Location;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.eclipse.epsilon.flexmi.xml.XMLElement;
+
+/**
+ * Sits between the parser and a {@link FlexmiResource} and maps the
+ * subtrees under the root element in parallel. Consecutive subtrees are
+ * batched into chunks, each chunk is mapped by a {@link SubtreeMapper} on a
+ * pool thread, and the results are merged into the resource in document
+ * order. The root element, processing instructions and chunks that contain
+ * processing instructions are handled on the calling thread, after all
+ * preceding chunks have been merged. Once {@link #maxPendingChunks} chunks
+ * are in flight, the calling thread (and so the parser) waits for the
+ * oldest one to be merged before it submits the next.
+ */
+public class ParallelMappingHandler implements StreamingHandler {
+	
+	protected static final int CHUNK_SIZE = 512;
+	
+	protected static ExecutorService executorService;
+	
+	protected FlexmiResource resource;
+	// Each chunk holds the events of its elements until it is merged
+	protected int maxPendingChunks = Runtime.getRuntime().availableProcessors() * 2;
+	protected int depth = 0;
+	protected Object root;
+	protected List<Event> chunk = new ArrayList<Event>();
+	protected int chunkElements = 0;
+	protected boolean chunkHasProcessingInstructions = false;
+	protected LinkedList<Future<MappedSubtrees>> pendingChunks = new LinkedList<Future<MappedSubtrees>>();
+	protected Map<Thread, SubtreeMapper> mappers = new ConcurrentHashMap<Thread, SubtreeMapper>();
+	protected Set<EPackage> preparedPackages = new HashSet<EPackage>();
+	
+	public ParallelMappingHandler(FlexmiResource resource) {
+		this.resource = resource;
+	}
+	
+	protected static synchronized ExecutorService getExecutorService() {
+		if (executorService == null) {
+			executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Flexmi mapping");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executorService;
+	}
+	
+	@Override
+	public void startDocument() {
+		resource.startDocument();
+	}
+	
+	@Override
+	public void endDocument() {
+		resource.endDocument();
+	}
+	
+	@Override
+	public void startElement(XMLElement element) {
+		depth++;
+		if (depth == 1) {
+			resource.startElement(element);
+			root = resource.stack.peek();
+			return;
+		}
+		
+		// Text-only children may set attributes of the root, which would
+		// register the root's id; start a new chunk so that this happens in
+		// the same order (relative to other ids) as in sequential mapping
+		if (depth == 2 && element.getAttributeCount() == 0 && element.getText() != null) {
+			submitChunk();
+		}
+		chunk.add(new Event(element, true));
+		chunkElements++;
+	}
+	
+	@Override
+	public void endElement(XMLElement element) {
+		depth--;
+		if (depth == 0) {
+			submitChunk();
+			mergeChunks(true);
+			resource.endElement(element);
+			return;
+		}
+		
+		chunk.add(new Event(element, false));
+		if (depth == 1 && chunkElements >= CHUNK_SIZE) {
+			submitChunk();
+		}
+	}
+	
+	@Override
+	public void processingInstruction(String target, String data, Location location) {
+		if (depth == 0) {
+			resource.processingInstruction(target, data, location);
+		}
+		else if (depth == 1) {
+			submitChunk();
+			mergeChunks(true);
+			resource.processingInstruction(target, data, location);
+		}
+		else {
+			chunk.add(new Event(target, data, location));
+			chunkHasProcessingInstructions = true;
+		}
+	}
+	
+	protected void submitChunk() {
+		if (chunk.isEmpty()) return;
+		
+		final List<Event> events = chunk;
+		chunk = new ArrayList<Event>();
+		chunkElements = 0;
+		
+		if (chunkHasProcessingInstructions) {
+			chunkHasProcessingInstructions = false;
+			mergeChunks(true);
+			for (Event event : events) {
+				if (event.isProcessingInstruction()) resource.processingInstruction(event.getTarget(), event.getData(), event.getLocation());
+				else if (event.isStart()) resource.startElement(event.getElement());
+				else resource.endElement(event.getElement());
+			}
+			return;
+		}
+		
+		if (root instanceof EObject) {
+			prepareMetamodel(((EObject) root).eClass().getEPackage());
+		}
+		
+		final Object root = this.root;
+		final MetamodelIndex metamodelIndex = resource.getMetamodelIndex();
+		final boolean fuzzyContainmentSlotMatching = resource.fuzzyContainmentSlotMatching;
+		final boolean orphansAsTopLevel = resource.orphansAsTopLevel;
+		final int fuzzyMatchingThreshold = resource.fuzzyMatchingThreshold;
+		
+		while (pendingChunks.size() >= maxPendingChunks) {
+			mergeFirstChunk();
+		}
+		pendingChunks.add(getExecutorService().submit(new Callable<MappedSubtrees>() {
+			@Override
+			public MappedSubtrees call() throws Exception {
+				return getMapper().map(events, root, metamodelIndex, fuzzyContainmentSlotMatching, orphansAsTopLevel, fuzzyMatchingThreshold);
+			}
+		}));
+		
+		mergeChunks(false);
+	}
+	
+	// Merges the mapped chunks at the head of the queue into the resource,
+	// waiting for all of them to complete if needed
+	protected void mergeChunks(boolean wait) {
+		while (!pendingChunks.isEmpty() && (wait || pendingChunks.getFirst().isDone())) {
+			mergeFirstChunk();
+		}
+	}
+	
+	protected void mergeFirstChunk() {
+		try {
+			pendingChunks.removeFirst().get().mergeInto(resource);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+	
+	protected SubtreeMapper getMapper() {
+		SubtreeMapper mapper = mappers.get(Thread.currentThread());
+		if (mapper == null) {
+			mapper = new SubtreeMapper(resource, this);
+			mappers.put(Thread.currentThread(), mapper);
+		}
+		return mapper;
+	}
+	
+	/**
+	 * EMF computes a number of metamodel caches lazily; populates them for
+	 * the package, and for the packages that its classes refer to, before
+	 * mappers create objects of its classes, so that they do not race to
+	 * initialise them
+	 */
+	protected synchronized void prepareMetamodel(EPackage ePackage) {
+		if (preparedPackages.contains(ePackage)) return;
+		
+		List<EPackage> ePackages = new ArrayList<EPackage>();
+		ePackages.add(ePackage);
+		preparedPackages.add(ePackage);
+		while (!ePackages.isEmpty()) {
+			for (EClassifier eClassifier : ePackages.remove(ePackages.size() - 1).getEClassifiers()) {
+				if (!(eClassifier instanceof EClass)) continue;
+				EClass eClass = (EClass) eClassifier;
+				
+				eClass.getEAllAttributes();
+				eClass.getEAllReferences();
+				eClass.getEAllContainments();
+				eClass.getEAllSuperTypes();
+				eClass.getEStructuralFeature("id");
+				List<EClass> relatedEClasses = new ArrayList<EClass>(eClass.getEAllSuperTypes());
+				for (EStructuralFeature eStructuralFeature : eClass.getEAllStructuralFeatures()) {
+					eClass.getFeatureID(eStructuralFeature);
+					((EStructuralFeature.Internal) eStructuralFeature).getSettingDelegate();
+					if (eStructuralFeature instanceof EReference) {
+						relatedEClasses.add(((EReference) eStructuralFeature).getEReferenceType());
+					}
+				}
+				for (EClass relatedEClass : relatedEClasses) {
+					EPackage relatedEPackage = relatedEClass.getEPackage();
+					if (relatedEPackage != null && preparedPackages.add(relatedEPackage)) {
+						ePackages.add(relatedEPackage);
+					}
+				}
+			}
+		}
+	}
+	
+	public static class Event {
+		
+		protected XMLElement element;
+		protected boolean start;
+		protected String target;
+		protected String data;
+		protected Location location;
+		
+		public Event(XMLElement element, boolean start) {
+			this.element = element;
+			this.start = start;
+		}
+		
+		public Event(String target, String data, Location location) {
+			this.target = target;
+			this.data = data;
+			this.location = location;
+		}
+		
+		public XMLElement getElement() {
+			return element;
+		}
+		
+		public boolean isStart() {
+			return start;
+		}
+		
+		public boolean isProcessingInstruction() {
+			return target != null;
+		}
+		
+		public String getTarget() {
+			return target;
+		}
+		
+		public String getData() {
+			return data;
+		}
+		
+		public Location getLocation() {
+			return location;
+		}
+	}
+
+}
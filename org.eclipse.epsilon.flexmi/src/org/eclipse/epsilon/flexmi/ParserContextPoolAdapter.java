@@ -0,0 +1,37 @@
+package org.eclipse.epsilon.flexmi;
+
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.epsilon.flexmi.xml.ParserContextPool;
+
+/**
+ * Gives the Flexmi resources of a resource set (including imported ones)
+ * a {@link ParserContextPool} of their own, released together with the
+ * resource set, instead of the shared pool. Add an instance to the
+ * adapters of the resource set to use it.
+ */
+public class ParserContextPoolAdapter extends AdapterImpl {
+	
+	protected ParserContextPool pool = new ParserContextPool();
+	
+	/**
+	 * Returns the pool of the resource set's adapter if it has one,
+	 * and the shared pool otherwise
+	 */
+	public static ParserContextPool getPool(ResourceSet resourceSet) {
+		if (resourceSet == null) return ParserContextPool.getSharedPool();
+		ParserContextPoolAdapter adapter = (ParserContextPoolAdapter) EcoreUtil.getExistingAdapter(resourceSet, ParserContextPoolAdapter.class);
+		return adapter != null ? adapter.pool : ParserContextPool.getSharedPool();
+	}
+	
+	public ParserContextPool getPool() {
+		return pool;
+	}
+	
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == ParserContextPoolAdapter.class;
+	}
+	
+}
@@ -0,0 +1,161 @@
+package org.eclipse.epsilon.flexmi;
+
+/**
+ * Solves assignment problems with few workers (rows), and at least as many
+ * jobs (columns), exactly by a depth-first search over the jobs of each
+ * worker in order of increasing cost, pruned by the cost of the best
+ * assignment so far and the cheapest jobs of the remaining workers.
+ * <p>
+ * When several assignments share the minimum cost, the {@link
+ * HungarianAlgorithm} returns one of them depending on how it explores the
+ * matrix. To give the same results, the solver only answers when the
+ * optimal assignment is unique (up to a small tolerance), and returns null
+ * otherwise, as it does for matrices that it does not handle. {@link
+ * #isTied()} tells the two cases apart.
+ * <p>
+ * The solver reuses its buffers across calls, so an instance must not
+ * be used by more than one thread at a time.
+ */
+public class SmallAssignmentSolver {
+	
+	public static final int MAX_WORKERS = 8;
+	public static final int MAX_JOBS = 64;
+	
+	// Costs closer than this are considered equal
+	protected static final double TOLERANCE = 1e-9;
+	
+	protected double[][] costMatrix;
+	protected double[][] inverseSimilarities = null;
+	protected int workers;
+	protected int jobs;
+	protected int[] jobsByCost = new int[0];
+	protected double[] remainingMinimum = new double[1];
+	protected int[] current = new int[0];
+	protected boolean[] assignedJobs = new boolean[0];
+	protected int[] best = new int[0];
+	protected double bestCost;
+	protected boolean tie;
+	
+	public static boolean canSolve(double[][] costMatrix) {
+		return costMatrix.length > 0 && costMatrix.length <= MAX_WORKERS && costMatrix[0].length >= costMatrix.length && costMatrix[0].length <= MAX_JOBS;
+	}
+	
+	/**
+	 * Returns the minimum cost assignment of workers to jobs as the
+	 * HungarianAlgorithm would, or null if the matrix is not one that
+	 * the solver handles or the minimum cost assignment is not unique
+	 */
+	public int[] execute(double[][] costMatrix) {
+		tie = false;
+		if (!canSolve(costMatrix)) return null;
+		
+		this.costMatrix = costMatrix;
+		workers = costMatrix.length;
+		jobs = costMatrix[0].length;
+		for (double[] row : costMatrix) {
+			if (row.length != jobs) throw new IllegalArgumentException("Irregular cost matrix");
+		}
+		return solve();
+	}
+	
+	/**
+	 * Like {@link #execute(double[][])} for the costs that FlexmiResource
+	 * assigns attributes to features by (1/similarity, or 2 for no
+	 * similarity), which are computed into a buffer of the solver
+	 */
+	public int[] executeOnInverseSimilarities(int[][] similarities) {
+		tie = false;
+		if (similarities.length == 0 || similarities.length > MAX_WORKERS || similarities[0].length < similarities.length || similarities[0].length > MAX_JOBS) return null;
+		
+		workers = similarities.length;
+		jobs = similarities[0].length;
+		if (inverseSimilarities == null) inverseSimilarities = new double[MAX_WORKERS][MAX_JOBS];
+		for (int w = 0; w < workers; w++) {
+			if (similarities[w].length != jobs) throw new IllegalArgumentException("Irregular similarity matrix");
+			for (int j = 0; j < jobs; j++) {
+				int similarity = similarities[w][j];
+				inverseSimilarities[w][j] = similarity != 0 ? 1 / (double) similarity : 2;
+			}
+		}
+		costMatrix = inverseSimilarities;
+		return solve();
+	}
+	
+	/**
+	 * Returns whether the last matrix had several assignments of minimum
+	 * cost, for which the solver returned null
+	 */
+	public boolean isTied() {
+		return tie;
+	}
+	
+	protected int[] solve() {
+		ensureCapacity();
+		
+		// Sort the jobs of each worker by cost (insertion sort,
+		// as rows are short), and sum the minimum costs of the
+		// workers from each worker onwards
+		remainingMinimum[workers] = 0;
+		for (int w = workers - 1; w >= 0; w--) {
+			double[] costs = costMatrix[w];
+			int offset = w * jobs;
+			for (int j = 0; j < jobs; j++) {
+				int position = offset + j;
+				while (position > offset && costs[jobsByCost[position - 1]] > costs[j]) {
+					jobsByCost[position] = jobsByCost[position - 1];
+					position--;
+				}
+				jobsByCost[position] = j;
+			}
+			remainingMinimum[w] = remainingMinimum[w + 1] + costs[jobsByCost[offset]];
+		}
+		
+		bestCost = Double.POSITIVE_INFINITY;
+		tie = false;
+		for (int j = 0; j < jobs; j++) assignedJobs[j] = false;
+		search(0, 0);
+		
+		if (tie || bestCost == Double.POSITIVE_INFINITY) return null;
+		int[] assignment = new int[workers];
+		System.arraycopy(best, 0, assignment, 0, workers);
+		return assignment;
+	}
+	
+	protected void search(int w, double cost) {
+		if (w == workers) {
+			if (cost < bestCost - TOLERANCE) {
+				bestCost = cost;
+				tie = false;
+				System.arraycopy(current, 0, best, 0, workers);
+			}
+			else tie = true;
+			return;
+		}
+		
+		double[] costs = costMatrix[w];
+		int offset = w * jobs;
+		for (int k = 0; k < jobs; k++) {
+			int j = jobsByCost[offset + k];
+			if (assignedJobs[j]) continue;
+			double bound = cost + costs[j] + remainingMinimum[w + 1];
+			// Once the best assignment is known to be tied, only strictly
+			// better ones matter. Later jobs of the worker cost more.
+			if (tie ? bound >= bestCost - TOLERANCE : bound > bestCost + TOLERANCE) break;
+			assignedJobs[j] = true;
+			current[w] = j;
+			search(w + 1, cost + costs[j]);
+			assignedJobs[j] = false;
+		}
+	}
+	
+	protected void ensureCapacity() {
+		if (jobsByCost.length < workers * jobs) jobsByCost = new int[workers * jobs];
+		if (remainingMinimum.length < workers + 1) {
+			remainingMinimum = new double[workers + 1];
+			current = new int[workers];
+			best = new int[workers];
+		}
+		if (assignedJobs.length < jobs) assignedJobs = new boolean[jobs];
+	}
+
+}
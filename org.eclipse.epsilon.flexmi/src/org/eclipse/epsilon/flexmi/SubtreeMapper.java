@@ -0,0 +1,363 @@
+package org.eclipse.epsilon.flexmi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.epsilon.flexmi.xml.Location;
+import org.eclipse.epsilon.flexmi.xml.XMLElement;
+
+/**
+ * Maps subtrees of the root element of a {@link FlexmiResource} on a worker
+ * thread, the same way as {@link FlexmiResource#startElement(XMLElement)}
+ * and {@link FlexmiResource#endElement(XMLElement)} do. Objects created by
+ * the mapper are private to it; changes to the (shared) root object and to
+ * the contents of the resource, as well as warnings, are recorded as
+ * operations that the resource applies, in document order, when the subtree
+ * is merged.
+ * <p>
+ * The mapper keeps its own caches and indices, and only calls the hooks of
+ * the resource that {@link FlexmiResource#isParallelMappingSupported()}
+ * lists, which are then called from several threads at once.
+ */
+public class SubtreeMapper {
+	
+	protected FlexmiResource resource;
+	protected ParallelMappingHandler handler;
+	protected Object root;
+	protected Stack<Object> stack = new Stack<Object>();
+	protected Location currentLocation = null;
+	protected List<Operation> operations;
+	protected List<UnresolvedReference> unresolvedReferences;
+	protected EObjectIdManager eObjectIdManager;
+	protected EObjectTraceManager eObjectTraceManager;
+	protected EObjectExtentIndex eObjectExtentIndex;
+	protected HashMap<String, EClass> eClassCache = new HashMap<String, EClass>();
+	protected ElementMappingCache elementMappingCache = new ElementMappingCache();
+	protected AssignmentPlanCache assignmentPlanCache = new AssignmentPlanCache();
+	// Packages known to have been prepared by the handler
+	protected Set<EPackage> preparedPackages = new HashSet<EPackage>();
+	
+	protected MetamodelIndex metamodelIndex;
+	protected boolean fuzzyContainmentSlotMatching;
+	protected boolean orphansAsTopLevel;
+	protected int fuzzyMatchingThreshold;
+	protected StringSimilarityProvider stringSimilarityProvider;
+	
+	public SubtreeMapper(FlexmiResource resource, ParallelMappingHandler handler) {
+		this.resource = resource;
+		this.handler = handler;
+	}
+	
+	public MappedSubtrees map(List<ParallelMappingHandler.Event> events, Object root, MetamodelIndex metamodelIndex, boolean fuzzyContainmentSlotMatching, boolean orphansAsTopLevel, int fuzzyMatchingThreshold) {
+		this.root = root;
+		// Element mappings and assignment plans are kept across
+		// the chunks of a load for as long as they remain valid
+		if (this.metamodelIndex != metamodelIndex || this.fuzzyContainmentSlotMatching != fuzzyContainmentSlotMatching ||
+				this.fuzzyMatchingThreshold != fuzzyMatchingThreshold || this.stringSimilarityProvider != resource.stringSimilarityProvider) {
+			elementMappingCache.invalidate();
+			assignmentPlanCache.invalidate();
+			eClassCache.clear();
+		}
+		this.metamodelIndex = metamodelIndex;
+		this.fuzzyContainmentSlotMatching = fuzzyContainmentSlotMatching;
+		this.orphansAsTopLevel = orphansAsTopLevel;
+		this.fuzzyMatchingThreshold = fuzzyMatchingThreshold;
+		this.stringSimilarityProvider = resource.stringSimilarityProvider;
+		operations = new ArrayList<Operation>();
+		unresolvedReferences = new ArrayList<UnresolvedReference>();
+		// Half of the events start elements
+		eObjectIdManager = new EObjectIdManager(events.size() / 2);
+		eObjectTraceManager = new EObjectTraceManager();
+		eObjectExtentIndex = new EObjectExtentIndex();
+		stack.clear();
+		stack.push(root);
+		
+		for (ParallelMappingHandler.Event event : events) {
+			if (event.isStart()) startElement(event.getElement());
+			else endElement(event.getElement());
+		}
+		
+		return new MappedSubtrees(operations, unresolvedReferences, eObjectIdManager, eObjectTraceManager, eObjectExtentIndex);
+	}
+	
+	protected void startElement(XMLElement element) {
+		currentLocation = element.getLocation();
+		String name = element.getName();
+		
+		if (name.indexOf(":") > -1) {
+			name = name.substring(name.indexOf(":")+1);
+		}
+		
+		EObject eObject = null;
+		EClass eClass = null;
+		Object peek = stack.peek();
+		
+		if (peek == null) {
+			// Orphans are mapped as top-level elements or skipped
+			if (orphansAsTopLevel) {
+				eClass = eClassForName(name);
+				if (eClass != null) {
+					eObject = createEObject(eClass);
+					eObjectExtentIndex.add(eObject);
+					addTopLevelEObject(eObject);
+					setAttributes(eObject, element);
+				}
+				else {
+					addParseWarning("Could not map element " + name + " to an EObject");
+				}
+				stack.push(eObject);
+			}
+			else {
+				stack.push(null);
+				addParseWarning("Could not map element " + name + " to an EObject");
+			}
+		}
+		else if (peek instanceof EReferenceSlot) {
+			EReferenceSlot containmentSlot = (EReferenceSlot) peek;
+			ElementMapping mapping = elementMappingCache.get(containmentSlot.getEReference(), name, ElementMappingCache.NO_CONTENT);
+			if (mapping == null) {
+				eClass = (EClass) resource.eNamedElementForName(name, metamodelIndex.getSubtypeNames(containmentSlot.getEReference().getEReferenceType()));
+				mapping = eClass != null ? ElementMapping.toEObject(eClass, null) : ElementMapping.UNMAPPED_ELEMENT;
+				elementMappingCache.put(containmentSlot.getEReference(), name, ElementMappingCache.NO_CONTENT, mapping);
+			}
+			eClass = mapping.getEClass();
+			
+			if (eClass != null) {
+				eObject = createEObject(eClass);
+				eObjectExtentIndex.add(eObject);
+				addContainedEObject(containmentSlot.getEObject(), containmentSlot.getEReference(), eObject);
+				stack.push(eObject);
+				setAttributes(eObject, element);
+			}
+			else {
+				stack.push(null);
+				addParseWarning("Could not map element " + name + " to an EObject");
+			}
+		}
+		else if (peek instanceof EObject) {
+			EObject parent = (EObject) peek;
+			
+			int content = ElementMappingCache.ATTRIBUTES;
+			if (element.getAttributeCount() == 0) {
+				content = element.getText() != null ? ElementMappingCache.TEXT_ONLY : ElementMappingCache.NO_CONTENT;
+			}
+			
+			ElementMapping mapping = elementMappingCache.get(parent.eClass(), name, content);
+			if (mapping == null) {
+				mapping = elementMappingCache.put(parent.eClass(), name, content, resource.getElementMapping(parent.eClass(), name, content));
+			}
+			
+			switch (mapping.getKind()) {
+				case ElementMapping.ATTRIBUTE:
+					setEAttributeValue(parent, mapping.getEAttribute(), name, element.getText().trim());
+					eObjectTraceManager.trace(parent, getLineNumber(element.getLocation()));
+					stack.push(null);
+					break;
+				case ElementMapping.CONTAINMENT_SLOT:
+					eObjectTraceManager.trace(parent, getLineNumber(element.getLocation()));
+					stack.push(new EReferenceSlot(mapping.getEReference(), parent));
+					break;
+				case ElementMapping.EOBJECT:
+					eClass = mapping.getEClass();
+					eObject = createEObject(eClass);
+					eObjectExtentIndex.add(eObject);
+					addContainedEObject(parent, mapping.getEReference(), eObject);
+					setAttributes(eObject, element);
+					stack.push(eObject);
+					break;
+				default:
+					stack.push(null);
+					addParseWarning("Could not map element " + name + " to an EObject");
+			}
+		}
+	}
+	
+	protected void endElement(XMLElement element) {
+		Object object = stack.pop();
+		if (object instanceof EObject) {
+			eObjectTraceManager.trace((EObject) object, getLineNumber(element.getLocation()));
+		}
+	}
+	
+	protected void setAttributes(EObject eObject, XMLElement element) {
+		if (element.getAttributeCount() == 0) return;
+		
+		String[] attributeNames = new String[element.getAttributeCount()];
+		for (int i=0;i<attributeNames.length;i++) {
+			attributeNames[i] = element.getAttributeName(i);
+		}
+		
+		AssignmentPlan plan = assignmentPlanCache.get(eObject.eClass(), attributeNames);
+		if (plan == null) {
+			plan = assignmentPlanCache.put(eObject.eClass(), attributeNames, resource.getAssignmentPlan(eObject.eClass(), attributeNames));
+		}
+		
+		if (plan.getIdAttribute() > -1) {
+			eObjectIdManager.setEObjectId(eObject, element.getAttributeValue(plan.getIdAttribute()));
+		}
+		
+		for (int i=0;i<plan.size();i++) {
+			String name = attributeNames[plan.getAttribute(i)];
+			String value = element.getAttributeValue(plan.getAttribute(i));
+			EStructuralFeature sf = plan.getFeature(i);
+			
+			if (sf instanceof EAttribute) {
+				setEAttributeValue(eObject, (EAttribute) sf, name, value);
+			}
+			else if (sf instanceof EReference) {
+				EReference eReference = (EReference) sf;
+				if (eReference.isMany()) {
+					for (String valuePart : value.split(",")) {
+						unresolvedReferences.add(new UnresolvedReference(eObject, eReference, name, valuePart.trim(), getLineNumber(element.getLocation())));
+					}
+				}
+				else {
+					unresolvedReferences.add(new UnresolvedReference(eObject, eReference, name, value, getLineNumber(element.getLocation())));
+				}
+			}
+			else {
+				addParseWarning("Could not map attribute " + name + " to a feature of " + eObject.eClass().getName());
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected void setEAttributeValue(final EObject eObject, final EAttribute eAttribute, final String attributeName, final String value) {
+		if (eObject == root) {
+			final Location location = currentLocation;
+			operations.add(new Operation() {
+				@Override
+				public void apply(FlexmiResource resource) {
+					resource.currentLocation = location;
+					resource.setEAttributeValue(eObject, eAttribute, attributeName, value);
+				}
+			});
+			return;
+		}
+		
+		if (eAttribute.isMany()) {
+			for (String valuePart : value.split(",")) {
+				Object eValue = getEValue(eAttribute, attributeName, valuePart.trim());
+				if (eValue == null) continue;
+				((List<Object>) eObject.eGet(eAttribute)).add(eValue);
+			}
+		}
+		else {
+			Object eValue = getEValue(eAttribute, attributeName, value);
+			if (eValue == null) return;
+			eObject.eSet(eAttribute, eValue);
+			if (eAttribute.isID() || "name".equalsIgnoreCase(eAttribute.getName())) {
+				eObjectIdManager.setEObjectId(eObject, value);
+			}
+		}
+	}
+	
+	protected Object getEValue(EAttribute eAttribute, String attributeName, String value) {
+		try {
+			return eAttribute.getEAttributeType().getEPackage().getEFactoryInstance().createFromString(eAttribute.getEAttributeType(), value);
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+			addParseWarning(ex.getMessage() + " in the value of " + attributeName);
+			return null;
+		}
+	}
+	
+	protected EClass eClassForName(String name) {
+		EClass eClass = eClassCache.get(name);
+		if (eClass == null) {
+			eClass = (EClass) resource.eNamedElementForName(name, metamodelIndex.getConcreteEClassNames());
+			eClassCache.put(name, eClass);
+		}
+		return eClass;
+	}
+	
+	protected EObject createEObject(EClass eClass) {
+		EPackage ePackage = eClass.getEPackage();
+		if (!preparedPackages.contains(ePackage)) {
+			handler.prepareMetamodel(ePackage);
+			preparedPackages.add(ePackage);
+		}
+		return resource.createEObject(eClass);
+	}
+	
+	protected void addTopLevelEObject(final EObject eObject) {
+		operations.add(new Operation() {
+			@Override
+			public void apply(FlexmiResource resource) {
+				resource.addTopLevelEObject(eObject);
+			}
+		});
+	}
+	
+	protected void addContainedEObject(final EObject parent, final EReference containment, final EObject eObject) {
+		if (parent != root) {
+			new EReferenceSlot(containment, parent).newUniqueValue(eObject);
+			return;
+		}
+		operations.add(new Operation() {
+			@Override
+			public void apply(FlexmiResource resource) {
+				resource.addContainedEObject(parent, containment, eObject);
+			}
+		});
+	}
+	
+	protected void addParseWarning(final String message) {
+		final int line = getLineNumber(currentLocation);
+		operations.add(new Operation() {
+			@Override
+			public void apply(FlexmiResource resource) {
+				resource.addParseWarning(message, line);
+			}
+		});
+	}
+	
+	protected int getLineNumber(Location location) {
+		return location != null ? location.getStartLine() : 0;
+	}
+	
+	public interface Operation {
+		
+		public void apply(FlexmiResource resource);
+		
+	}
+	
+	public static class MappedSubtrees {
+		
+		protected List<Operation> operations;
+		protected List<UnresolvedReference> unresolvedReferences;
+		protected EObjectIdManager eObjectIdManager;
+		protected EObjectTraceManager eObjectTraceManager;
+		protected EObjectExtentIndex eObjectExtentIndex;
+		
+		public MappedSubtrees(List<Operation> operations, List<UnresolvedReference> unresolvedReferences, EObjectIdManager eObjectIdManager, EObjectTraceManager eObjectTraceManager, EObjectExtentIndex eObjectExtentIndex) {
+			this.operations = operations;
+			this.unresolvedReferences = unresolvedReferences;
+			this.eObjectIdManager = eObjectIdManager;
+			this.eObjectTraceManager = eObjectTraceManager;
+			this.eObjectExtentIndex = eObjectExtentIndex;
+		}
+		
+		public void mergeInto(FlexmiResource resource) {
+			for (Operation operation : operations) {
+				operation.apply(resource);
+			}
+			resource.unresolvedReferences.addAll(unresolvedReferences);
+			resource.eObjectIdManager.addAll(eObjectIdManager);
+			resource.eObjectTraceManager.addAll(eObjectTraceManager);
+			resource.eObjectExtentIndex.addAll(eObjectExtentIndex);
+		}
+	}
+
+}
@@ -63,13 +63,21 @@ public class UnresolvedReference {
 	}
 	
 	public boolean resolve(Collection<EObject> candidates) {
+		EObject target = getTarget(candidates);
+		if (target == null) return false;
+		new EReferenceSlot(eReference, getEObject()).newValue(target);
+		return true;
+	}
+	
+	/**
+	 * Returns the first candidate that the reference can point
+	 * to, or null if there is none
+	 */
+	public EObject getTarget(Collection<EObject> candidates) {
 		for (EObject candidate : candidates) {
-			if (eReference.getEReferenceType().isInstance(candidate)) {
-				new EReferenceSlot(eReference, getEObject()).newValue(candidate);
-				return true;
-			}
+			if (eReference.getEReferenceType().isInstance(candidate)) return candidate;
 		}
-		return false;
+		return null;
 	}
 	
 }
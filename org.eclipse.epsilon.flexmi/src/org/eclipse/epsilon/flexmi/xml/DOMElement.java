@@ -0,0 +1,78 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+public class DOMElement implements XMLElement {
+	
+	protected Element element;
+	protected NamedNodeMap attributes;
+	protected LocationRecorder locationRecorder;
+	protected int ordinal;
+	
+	public DOMElement(Element element, LocationRecorder locationRecorder, int ordinal) {
+		this.element = element;
+		this.attributes = element.getAttributes();
+		this.locationRecorder = locationRecorder;
+		this.ordinal = ordinal;
+	}
+	
+	public Element getElement() {
+		return element;
+	}
+	
+	@Override
+	public String getName() {
+		return element.getNodeName();
+	}
+	
+	@Override
+	public int getAttributeCount() {
+		return attributes.getLength();
+	}
+	
+	@Override
+	public String getAttributeName(int index) {
+		return attributes.item(index).getNodeName();
+	}
+	
+	@Override
+	public String getAttributeValue(int index) {
+		return attributes.item(index).getNodeValue();
+	}
+	
+	@Override
+	public int getAttributeIndex(String name) {
+		for (int i = 0; i < attributes.getLength(); i++) {
+			if (attributes.item(i).getNodeName().equals(name)) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the character data of the element if all its children are
+	 * text or CDATA nodes, joined in the same way as the streaming backends
+	 * join adjacent character data.
+	 */
+	@Override
+	public String getText() {
+		Node firstChild = element.getFirstChild();
+		if (!(firstChild instanceof Text)) return null;
+		if (firstChild.getNextSibling() == null) return firstChild.getNodeValue();
+		
+		StringBuilder text = new StringBuilder();
+		for (Node child = firstChild; child != null; child = child.getNextSibling()) {
+			if (!(child instanceof Text)) return null;
+			text.append(child.getNodeValue());
+		}
+		return text.toString();
+	}
+	
+	@Override
+	public Location getLocation() {
+		return locationRecorder.getLocation(ordinal);
+	}
+	
+}
@@ -1,44 +1,34 @@
 package org.eclipse.epsilon.flexmi.xml;
 
-import java.util.Stack;
+import java.util.Arrays;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.ProcessingInstruction;
-import org.w3c.dom.UserDataHandler;
-import org.w3c.dom.events.Event;
-import org.w3c.dom.events.EventListener;
-import org.w3c.dom.events.EventTarget;
-import org.w3c.dom.events.MutationEvent;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.LocatorImpl;
 import org.xml.sax.helpers.XMLFilterImpl;
 
+/**
+ * Records the start and end positions of elements and processing instructions
+ * in parallel arrays, indexed by the order in which they start in the document
+ * (which is also the order in which a depth-first walk of the resulting DOM
+ * visits them).
+ */
 public class LocationRecorder extends XMLFilterImpl {
 
+	protected static final int INITIAL_CAPACITY = 256;
+	
 	protected Locator locator;
-	protected Stack<Locator> locatorStack = new Stack<Locator>();
-	protected UserDataHandler dataHandler = new LocationDataHandler();
-	protected Stack<Node> nodeStack = new Stack<Node>();
-
-	LocationRecorder(XMLReader xmlReader, Document dom) {
+	protected int size = 0;
+	protected int[] startLines = new int[INITIAL_CAPACITY];
+	protected int[] startColumns = new int[INITIAL_CAPACITY];
+	protected int[] endLines = new int[INITIAL_CAPACITY];
+	protected int[] endColumns = new int[INITIAL_CAPACITY];
+	protected int[] openElements = new int[INITIAL_CAPACITY];
+	protected int depth = 0;
+
+	LocationRecorder(XMLReader xmlReader) {
 		super(xmlReader);
-
-		((EventTarget) dom).addEventListener("DOMNodeInserted",
-				new EventListener() {
-
-					@Override
-					public void handleEvent(Event e) {
-						EventTarget target = ((MutationEvent) e).getTarget();
-						if (target instanceof Element || target instanceof ProcessingInstruction) {
-							nodeStack.push((Node) target);
-						}
-					}
-				}, true);
 	}
 
 	@Override
@@ -51,22 +41,18 @@ public class LocationRecorder extends XMLFilterImpl {
 	public void startElement(String uri, String localName, String qName,
 			Attributes atts) throws SAXException {
 		super.startElement(uri, localName, qName, atts);
-
-		locatorStack.push(new LocatorImpl(locator));
+		
+		if (depth == openElements.length) {
+			openElements = Arrays.copyOf(openElements, depth * 2);
+		}
+		openElements[depth++] = record();
 	}
 	
 	@Override
 	public void processingInstruction(String target, String data)
 			throws SAXException {
 		super.processingInstruction(target, data);
-		
-		Location location = new Location(locator.getLineNumber(),
-				locator.getColumnNumber(), locator.getLineNumber(),
-				locator.getColumnNumber());
-
-		nodeStack.pop().setUserData(Location.ID,
-				location, dataHandler);
-		
+		record();
 	}
 	
 	@Override
@@ -75,32 +61,52 @@ public class LocationRecorder extends XMLFilterImpl {
 
 		super.endElement(uri, localName, qName);
 
-		if (locatorStack.size() > 0) {
-			Locator startLocator = locatorStack.pop();
-
-			Location location = new Location(startLocator.getLineNumber(),
-					startLocator.getColumnNumber(), locator.getLineNumber(),
-					locator.getColumnNumber());
-
-			nodeStack.pop().setUserData(Location.ID,
-					location, dataHandler);
+		if (depth > 0) {
+			int ordinal = openElements[--depth];
+			endLines[ordinal] = locator.getLineNumber();
+			endColumns[ordinal] = locator.getColumnNumber();
 		}
 	}
-
-	private class LocationDataHandler implements UserDataHandler {
-
-		@Override
-		public void handle(short operation, String key, Object data, Node src,
-				Node dst) {
-
-			if (src != null && dst != null) {
-				Location locatonData = (Location) src
-						.getUserData(Location.ID);
-				if (locatonData != null) {
-					dst.setUserData(Location.ID,
-							locatonData, dataHandler);
-				}
-			}
+	
+	public int size() {
+		return size;
+	}
+	
+	public Location getLocation(int ordinal) {
+		if (ordinal >= size) return null;
+		return new Location(startLines[ordinal], startColumns[ordinal], endLines[ordinal], endColumns[ordinal]);
+	}
+	
+	public int getStartLine(int ordinal) {
+		return startLines[ordinal];
+	}
+	
+	public int getStartColumn(int ordinal) {
+		return startColumns[ordinal];
+	}
+	
+	public int getEndLine(int ordinal) {
+		return endLines[ordinal];
+	}
+	
+	public int getEndColumn(int ordinal) {
+		return endColumns[ordinal];
+	}
+	
+	protected int record() {
+		if (size == startLines.length) {
+			int capacity = size * 2;
+			startLines = Arrays.copyOf(startLines, capacity);
+			startColumns = Arrays.copyOf(startColumns, capacity);
+			endLines = Arrays.copyOf(endLines, capacity);
+			endColumns = Arrays.copyOf(endColumns, capacity);
 		}
+		int line = locator.getLineNumber();
+		int column = locator.getColumnNumber();
+		startLines[size] = line;
+		startColumns[size] = column;
+		endLines[size] = line;
+		endColumns[size] = column;
+		return size++;
 	}
-}
\ No newline at end of file
+}
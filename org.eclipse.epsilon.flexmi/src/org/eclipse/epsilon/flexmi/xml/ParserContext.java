@@ -0,0 +1,85 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Holds the JAXP objects and the tokenizer used for parsing so that they
+ * are created (and looked up through service discovery) once per
+ * {@link ParserContextPool} instead of once per parse. A context is used
+ * by one parse at a time; a parse that starts while another one is in
+ * progress (e.g. from within a handler) acquires a different context.
+ */
+public class ParserContext {
+	
+	protected static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+	
+	protected ParserContextPool pool;
+	protected SAXParserFactory saxParserFactory;
+	protected SAXParser saxParser;
+	protected DocumentBuilderFactory documentBuilderFactory;
+	protected DocumentBuilder documentBuilder;
+	protected TransformerFactory transformerFactory;
+	protected Transformer transformer;
+	protected XMLTokenizer tokenizer;
+	
+	protected ParserContext(ParserContextPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Resets the context and returns it to its pool
+	 */
+	public void release() {
+		if (saxParser != null) {
+			try {
+				saxParser.setProperty(LEXICAL_HANDLER_PROPERTY, null);
+			}
+			catch (SAXException ex) {
+				// Not all parsers accept a null lexical handler
+			}
+			saxParser.reset();
+		}
+		if (documentBuilder != null) documentBuilder.reset();
+		if (transformer != null) transformer.reset();
+		pool.release(this);
+	}
+	
+	public SAXParser getSAXParser() throws ParserConfigurationException, SAXException {
+		if (saxParser == null) {
+			if (saxParserFactory == null) saxParserFactory = SAXParserFactory.newInstance();
+			saxParser = saxParserFactory.newSAXParser();
+		}
+		return saxParser;
+	}
+	
+	public DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		if (documentBuilder == null) {
+			if (documentBuilderFactory == null) documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			documentBuilder = documentBuilderFactory.newDocumentBuilder();
+		}
+		return documentBuilder;
+	}
+	
+	public Transformer getTransformer() throws TransformerConfigurationException {
+		if (transformer == null) {
+			if (transformerFactory == null) transformerFactory = TransformerFactory.newInstance();
+			transformer = transformerFactory.newTransformer();
+		}
+		return transformer;
+	}
+	
+	public XMLTokenizer getTokenizer() {
+		if (tokenizer == null) tokenizer = new XMLTokenizer();
+		return tokenizer;
+	}
+	
+}
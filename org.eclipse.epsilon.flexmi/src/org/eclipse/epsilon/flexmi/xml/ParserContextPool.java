@@ -0,0 +1,52 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps idle {@link ParserContext}s for reuse by later parses. Contexts are
+ * handed to one parse at a time, whichever thread it runs on, so a pool can
+ * be shared between threads and nothing stays attached to the threads
+ * themselves; the contexts go away with the pool. Parsers use the
+ * {@link #getSharedPool() shared pool} unless they are given another one.
+ */
+public class ParserContextPool {
+	
+	protected static final int MAX_IDLE_CONTEXTS = 4;
+	
+	// Bounded, so that it holds a few contexts per processor at most
+	protected static final ParserContextPool SHARED_POOL = new ParserContextPool(Math.max(MAX_IDLE_CONTEXTS, Runtime.getRuntime().availableProcessors()));
+	
+	protected ArrayDeque<ParserContext> idleContexts = new ArrayDeque<ParserContext>();
+	protected int maxIdleContexts;
+	
+	public ParserContextPool() {
+		this(MAX_IDLE_CONTEXTS);
+	}
+	
+	public ParserContextPool(int maxIdleContexts) {
+		this.maxIdleContexts = maxIdleContexts;
+	}
+	
+	/**
+	 * Returns the process-wide pool, which lets batch loads reuse contexts
+	 * even when each file is loaded into a new resource set
+	 */
+	public static ParserContextPool getSharedPool() {
+		return SHARED_POOL;
+	}
+	
+	public synchronized ParserContext acquire() {
+		ParserContext context = idleContexts.poll();
+		if (context == null) context = new ParserContext(this);
+		return context;
+	}
+	
+	protected synchronized void release(ParserContext context) {
+		if (idleContexts.size() < maxIdleContexts) idleContexts.push(context);
+	}
+	
+	public synchronized void clear() {
+		idleContexts.clear();
+	}
+	
+}
@@ -0,0 +1,95 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+/**
+ * Statistics of a parse through a {@link PipelinedBackend}. If the
+ * producer (parser) spends most of its time waiting for the queue to drain,
+ * the handler is the bottleneck; if the consumer (handler) spends most of
+ * its time waiting for events, the parser is.
+ */
+public class PipelineStatistics {
+	
+	// Each counter is written by either the producer or the consumer
+	// thread, and can be read from the other one while a (failed) parse
+	// winds down
+	protected volatile long events;
+	protected volatile long batches;
+	protected volatile int queueCapacity;
+	protected volatile int maxQueueSize;
+	protected volatile long producerWaits;
+	protected volatile long producerWaitTime;
+	protected volatile long consumerWaits;
+	protected volatile long consumerWaitTime;
+	protected volatile long parseTime;
+	protected volatile long totalTime;
+	
+	public long getEvents() {
+		return events;
+	}
+	
+	public long getBatches() {
+		return batches;
+	}
+	
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+	
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+	
+	/**
+	 * Number of times the producer blocked on a full queue
+	 */
+	public long getProducerWaits() {
+		return producerWaits;
+	}
+	
+	/**
+	 * Time (ns) the producer spent blocked on a full queue
+	 */
+	public long getProducerWaitTime() {
+		return producerWaitTime;
+	}
+	
+	/**
+	 * Number of times the consumer blocked on an empty queue
+	 */
+	public long getConsumerWaits() {
+		return consumerWaits;
+	}
+	
+	/**
+	 * Time (ns) the consumer spent blocked on an empty queue
+	 */
+	public long getConsumerWaitTime() {
+		return consumerWaitTime;
+	}
+	
+	/**
+	 * Time (ns) spent by the producer, including waits
+	 */
+	public long getParseTime() {
+		return parseTime;
+	}
+	
+	/**
+	 * Wall-clock time (ns) of the parse, as seen by the consumer
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+	
+	public boolean isParserBound() {
+		return consumerWaitTime > producerWaitTime;
+	}
+	
+	@Override
+	public String toString() {
+		return events + " events in " + batches + " batches, max queue size " + maxQueueSize + "/" + queueCapacity + 
+				", parser blocked " + producerWaits + " times (" + producerWaitTime / 1000000 + "ms)" + 
+				", handler blocked " + consumerWaits + " times (" + consumerWaitTime / 1000000 + "ms)" + 
+				", parse " + parseTime / 1000000 + "ms, total " + totalTime / 1000000 + "ms";
+	}
+	
+}
@@ -0,0 +1,358 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Backend;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs another backend on a separate (producer) thread and feeds its events
+ * to the handler on the calling (consumer) thread through a bounded queue,
+ * so that parsing overlaps with whatever the handler does with the events.
+ * Events are queued in batches to keep synchronisation off the critical
+ * path; the time each side spends blocked on the queue is recorded in the
+ * backend's {@link PipelineStatistics}.
+ */
+public class PipelinedBackend implements Backend {
+	
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	
+	protected static ExecutorService executorService;
+	
+	protected Backend backend;
+	protected int batchSize;
+	protected int queueCapacity;
+	protected PipelineStatistics statistics = new PipelineStatistics();
+	// Whether the consumer has taken the batch that marks the end of the stream
+	protected boolean closed = false;
+	
+	public PipelinedBackend(Backend backend) {
+		this(backend, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	public PipelinedBackend(Backend backend, int batchSize, int queueCapacity) {
+		this.backend = backend;
+		this.batchSize = batchSize;
+		this.queueCapacity = queueCapacity;
+	}
+	
+	protected static synchronized ExecutorService getExecutorService() {
+		if (executorService == null) {
+			executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Flexmi parser");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executorService;
+	}
+	
+	/**
+	 * Returns the statistics of the last parse
+	 */
+	public PipelineStatistics getStatistics() {
+		return statistics;
+	}
+	
+	@Override
+	public void parse(final InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, IOException {
+		statistics = new PipelineStatistics();
+		statistics.queueCapacity = queueCapacity;
+		final QueueingHandler producer = new QueueingHandler(new ArrayBlockingQueue<Event[]>(queueCapacity), batchSize, statistics);
+		long start = System.nanoTime();
+		
+		Future<Void> parsing = getExecutorService().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				long start = System.nanoTime();
+				try {
+					backend.parse(inputStream, producer);
+				}
+				finally {
+					statistics.parseTime = System.nanoTime() - start;
+					producer.close();
+				}
+				return null;
+			}
+		});
+		
+		boolean consumed = false;
+		try {
+			consume(producer.queue, handler);
+			consumed = true;
+		}
+		finally {
+			// If the handler failed, stop the producer and wait for it to
+			// finish, draining the queue so that it cannot block on it
+			if (!consumed) {
+				producer.cancel();
+				drain(producer.queue);
+				awaitTermination(parsing);
+			}
+			statistics.totalTime = System.nanoTime() - start;
+		}
+		
+		try {
+			parsing.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof SAXException) throw (SAXException) cause;
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof ParserConfigurationException) throw (ParserConfigurationException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	protected void consume(BlockingQueue<Event[]> queue, StreamingHandler handler) {
+		closed = false;
+		while (true) {
+			Event[] batch = queue.poll();
+			if (batch == null) {
+				long start = System.nanoTime();
+				try {
+					batch = queue.take();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(ex);
+				}
+				statistics.consumerWaitTime += System.nanoTime() - start;
+				statistics.consumerWaits++;
+			}
+			closed = batch[batch.length - 1] == null;
+			
+			for (Event event : batch) {
+				if (event == null) return;
+				switch (event.kind) {
+					case Event.START_DOCUMENT: handler.startDocument(); break;
+					case Event.END_DOCUMENT: handler.endDocument(); break;
+					case Event.START_ELEMENT: handler.startElement(event.element); break;
+					case Event.END_ELEMENT: handler.endElement(event.element); break;
+					case Event.PROCESSING_INSTRUCTION: handler.processingInstruction(event.target, event.data, event.location); break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Discards the remaining batches of a cancelled producer, up to the
+	 * batch that marks the end of the stream
+	 */
+	protected void drain(BlockingQueue<Event[]> queue) {
+		boolean interrupted = Thread.interrupted();
+		while (!closed) {
+			try {
+				Event[] batch = queue.take();
+				closed = batch[batch.length - 1] == null;
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
+	// Waits for the producer, whose own failure is of no interest once the handler failed
+	protected void awaitTermination(Future<Void> parsing) {
+		boolean interrupted = Thread.interrupted();
+		while (true) {
+			try {
+				parsing.get();
+				break;
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+			catch (ExecutionException ex) {
+				break;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
+	protected static class Event {
+		
+		protected static final int START_DOCUMENT = 0;
+		protected static final int END_DOCUMENT = 1;
+		protected static final int START_ELEMENT = 2;
+		protected static final int END_ELEMENT = 3;
+		protected static final int PROCESSING_INSTRUCTION = 4;
+		
+		protected int kind;
+		protected XMLElement element;
+		protected String target;
+		protected String data;
+		protected Location location;
+		
+		public Event(int kind, XMLElement element) {
+			this.kind = kind;
+			this.element = element;
+		}
+		
+		public Event(String target, String data, Location location) {
+			this.kind = PROCESSING_INSTRUCTION;
+			this.target = target;
+			this.data = data;
+			this.location = location;
+		}
+	}
+	
+	/**
+	 * An element as it was when one of its events was queued. Backends
+	 * complete the location of an element at its end tag, after its start
+	 * event may have been handed over to the consumer, so the location is
+	 * copied on the producer thread. The rest of the element does not change
+	 * once its start event has been delivered.
+	 */
+	protected static class QueuedElement implements XMLElement {
+		
+		protected final XMLElement element;
+		protected final Location location;
+		
+		public QueuedElement(XMLElement element) {
+			this.element = element;
+			this.location = element.getLocation();
+		}
+		
+		@Override
+		public String getName() {
+			return element.getName();
+		}
+		
+		@Override
+		public int getAttributeCount() {
+			return element.getAttributeCount();
+		}
+		
+		@Override
+		public String getAttributeName(int index) {
+			return element.getAttributeName(index);
+		}
+		
+		@Override
+		public String getAttributeValue(int index) {
+			return element.getAttributeValue(index);
+		}
+		
+		@Override
+		public int getAttributeIndex(String name) {
+			return element.getAttributeIndex(name);
+		}
+		
+		@Override
+		public String getText() {
+			return element.getText();
+		}
+		
+		@Override
+		public Location getLocation() {
+			return location;
+		}
+	}
+	
+	/**
+	 * Collects the events of the producer into batches. A batch that is
+	 * not full marks the end of the stream with a null event.
+	 */
+	protected static class QueueingHandler implements StreamingHandler {
+		
+		protected BlockingQueue<Event[]> queue;
+		protected PipelineStatistics statistics;
+		protected Event[] batch;
+		protected int size = 0;
+		protected volatile boolean cancelled = false;
+		
+		public QueueingHandler(BlockingQueue<Event[]> queue, int batchSize, PipelineStatistics statistics) {
+			this.queue = queue;
+			this.statistics = statistics;
+			this.batch = new Event[batchSize];
+		}
+		
+		@Override
+		public void startDocument() {
+			add(new Event(Event.START_DOCUMENT, null));
+		}
+		
+		@Override
+		public void endDocument() {
+			add(new Event(Event.END_DOCUMENT, null));
+		}
+		
+		@Override
+		public void startElement(XMLElement element) {
+			add(new Event(Event.START_ELEMENT, new QueuedElement(element)));
+		}
+		
+		@Override
+		public void endElement(XMLElement element) {
+			add(new Event(Event.END_ELEMENT, new QueuedElement(element)));
+		}
+		
+		@Override
+		public void processingInstruction(String target, String data, Location location) {
+			add(new Event(target, data, location));
+		}
+		
+		protected void add(Event event) {
+			// Aborts the parse of the backend once the consumer has failed
+			if (cancelled) throw new CancellationException();
+			batch[size++] = event;
+			statistics.events++;
+			if (size == batch.length) flush(new Event[batch.length]);
+		}
+		
+		protected void flush(Event[] next) {
+			try {
+				if (!queue.offer(batch)) {
+					long start = System.nanoTime();
+					queue.put(batch);
+					statistics.producerWaitTime += System.nanoTime() - start;
+					statistics.producerWaits++;
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+			statistics.batches++;
+			statistics.maxQueueSize = Math.max(statistics.maxQueueSize, queue.size());
+			batch = next;
+			size = 0;
+		}
+		
+		// Sends the last (never full) batch, also after a failed parse,
+		// so that the consumer stops
+		public void close() {
+			flush(null);
+		}
+		
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+
+}
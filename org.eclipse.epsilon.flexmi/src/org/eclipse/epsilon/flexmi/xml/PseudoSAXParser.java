@@ -2,16 +2,13 @@ package org.eclipse.epsilon.flexmi.xml;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.sax.SAXSource;
 
@@ -24,76 +21,238 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 public class PseudoSAXParser {
+	
+	protected Backend backend;
+	protected ParserContextPool contextPool;
+	
+	public PseudoSAXParser() {
+		this(ParserContextPool.getSharedPool());
+	}
+	
+	public PseudoSAXParser(ParserContextPool contextPool) {
+		this(new SAXBackend(contextPool), contextPool);
+	}
+	
+	public PseudoSAXParser(Backend backend) {
+		this(backend, ParserContextPool.getSharedPool());
+	}
+	
+	/**
+	 * @param contextPool the pool from which {@link #parseDocument(InputStream, StreamingHandler)}
+	 * takes its parser context
+	 */
+	public PseudoSAXParser(Backend backend, ParserContextPool contextPool) {
+		this.backend = backend;
+		this.contextPool = contextPool;
+	}
 
 	public static void main(String[] args) throws Exception {
-		new PseudoSAXParser().parse(new FileInputStream(new File("plugin.xml")), new Handler() {
+		new PseudoSAXParser().parse(new FileInputStream(new File("plugin.xml")), new StreamingHandler() {
 			
 			@Override
-			public void startElement(Element element) {
-				System.out.println("Starting " + element.getNodeName() + " -> " + element.getUserData(Location.ID));
+			public void startElement(XMLElement element) {
+				System.out.println("Starting " + element.getName() + " -> " + element.getLocation());
 			}
 			
 			@Override
-			public void startDocument(Document document) {
+			public void startDocument() {
 				
 			}
 			
 			@Override
-			public void processingInstruction(ProcessingInstruction instruction) {
-				System.out.println(instruction.getTarget() + " -> " + ((Node)instruction).getUserData(Location.ID));
+			public void processingInstruction(String target, String data, Location location) {
+				System.out.println(target + " -> " + location);
 			}
 			
 			@Override
-			public void endElement(Element element) {
-				//System.out.println("Ending " + element.getNodeName());
+			public void endElement(XMLElement element) {
+				//System.out.println("Ending " + element.getName());
 			}
 
 			@Override
-			public void endDocument(Document document) {
+			public void endDocument() {
 				
 			}
 			
 		});
 	}
-
+	
+	/**
+	 * Streams the input to the handler through the parser's backend,
+	 * without building a DOM.
+	 */
+	public void parse(InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, IOException {
+		backend.parse(inputStream, handler);
+	}
+	
+	/**
+	 * Builds a DOM of the input and walks it, passing its nodes to the
+	 * handler. The location of each element and processing instruction is
+	 * stored in its {@link Location#ID} user data.
+	 * 
+	 * @deprecated use {@link #parse(InputStream, StreamingHandler)}, or
+	 * {@link #parseDocument(InputStream, StreamingHandler)} where the DOM
+	 * is needed
+	 */
+	@Deprecated
 	public void parse(InputStream inputStream, Handler handler) throws ParserConfigurationException, SAXException, TransformerException  {
-		//Stopwatch stopwatch = new Stopwatch();
-		//stopwatch.resume();
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		TransformerFactory transformerFactory = TransformerFactory.newInstance();
-		Transformer transformer = transformerFactory.newTransformer();
-
-		DocumentBuilder docBuilder = documentBuilderFactory.newDocumentBuilder();
-		Document document = docBuilder.newDocument();
-
-		SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-		SAXParser saxParser = saxParserFactory.newSAXParser();
-		XMLReader xmlReader = saxParser.getXMLReader();
-		
-		transformer.transform(new SAXSource(new LocationRecorder(xmlReader,document), new InputSource(inputStream)), new DOMResult(document));
-		//stopwatch.pause();
-		//System.out.print(stopwatch.getElapsed()+", ");
+		DOMResult result = new DOMResult();
+		LocationRecorder locationRecorder = transform(inputStream, result);
+		Document document = (Document) result.getNode();
 		
 		handler.startDocument(document);
-		visit(document, handler);
+		visit(document, handler, locationRecorder);
 		handler.endDocument(document);
 	}
-
-	protected void visit(Node node, Handler handler) {
-		if (node instanceof Element) {
-			handler.startElement((Element) node);
+	
+	/**
+	 * Builds a DOM of the input before walking it. Elements passed to the
+	 * handler are {@link DOMElement}s, which expose the underlying DOM nodes.
+	 */
+	public Document parseDocument(InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, TransformerException  {
+		DOMResult result = new DOMResult();
+		LocationRecorder locationRecorder = transform(inputStream, result);
+		Document document = (Document) result.getNode();
+		
+		handler.startDocument();
+		visit(document, handler, locationRecorder, 0);
+		handler.endDocument();
+		return document;
+	}
+	
+	/**
+	 * Builds the DOM of the input into the result, and returns the positions
+	 * recorded for its elements and processing instructions.
+	 */
+	protected LocationRecorder transform(InputStream inputStream, DOMResult result) throws ParserConfigurationException, SAXException, TransformerException {
+		//Stopwatch stopwatch = new Stopwatch();
+		//stopwatch.resume();
+		ParserContext context = contextPool.acquire();
+		try {
+			Transformer transformer = context.getTransformer();
+			Document document = context.getDocumentBuilder().newDocument();
+			// The tree is built from well-formed SAX events; skipping the
+			// per-insertion hierarchy checks keeps deep documents linear
+			document.setStrictErrorChecking(false);
+			result.setNode(document);
+			XMLReader xmlReader = context.getSAXParser().getXMLReader();
+			LocationRecorder locationRecorder = new LocationRecorder(xmlReader);
+			
+			transformer.transform(new SAXSource(locationRecorder, new InputSource(inputStream)), result);
+			//stopwatch.pause();
+			//System.out.print(stopwatch.getElapsed()+", ");
+			return locationRecorder;
 		}
-		if (node instanceof ProcessingInstruction) {
-			handler.processingInstruction((ProcessingInstruction) node);
+		finally {
+			context.release();
 		}
-		for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-			visit(node.getChildNodes().item(i), handler);
+	}
+	
+	/**
+	 * Walks the subtree of the node and returns the ordinal of the next
+	 * element or processing instruction in document order. The walk follows
+	 * sibling pointers with an explicit stack of open elements, so that it
+	 * neither recurses per nesting level nor indexes into child node lists.
+	 */
+	protected int visit(Node root, StreamingHandler handler, LocationRecorder locationRecorder, int ordinal) {
+		ArrayDeque<DOMElement> openElements = new ArrayDeque<DOMElement>();
+		Node node = root;
+		while (true) {
+			if (node instanceof Element) {
+				DOMElement element = new DOMElement((Element) node, locationRecorder, ordinal++);
+				openElements.push(element);
+				handler.startElement(element);
+			}
+			else if (node instanceof ProcessingInstruction) {
+				ProcessingInstruction processingInstruction = (ProcessingInstruction) node;
+				handler.processingInstruction(processingInstruction.getTarget(), processingInstruction.getData(), locationRecorder.getLocation(ordinal++));
+			}
+			
+			Node firstChild = node.getFirstChild();
+			if (firstChild != null) {
+				node = firstChild;
+				continue;
+			}
+			
+			while (true) {
+				if (node instanceof Element) {
+					handler.endElement(openElements.pop());
+				}
+				if (node == root) return ordinal;
+				Node nextSibling = node.getNextSibling();
+				if (nextSibling != null) {
+					node = nextSibling;
+					break;
+				}
+				node = node.getParentNode();
+			}
 		}
-		if (node instanceof Element) {
-			handler.endElement((Element) node);
+	}
+	
+	/**
+	 * Walks the document in the same order as
+	 * {@link #visit(Node, StreamingHandler, LocationRecorder, int)}, storing
+	 * the recorded location of each element and processing instruction in
+	 * its user data before passing it to the handler.
+	 */
+	@Deprecated
+	protected void visit(Document document, Handler handler, LocationRecorder locationRecorder) {
+		int ordinal = 0;
+		Node node = document;
+		while (true) {
+			if (node instanceof Element) {
+				node.setUserData(Location.ID, locationRecorder.getLocation(ordinal++), null);
+				handler.startElement((Element) node);
+			}
+			else if (node instanceof ProcessingInstruction) {
+				node.setUserData(Location.ID, locationRecorder.getLocation(ordinal++), null);
+				handler.processingInstruction((ProcessingInstruction) node);
+			}
+			
+			Node firstChild = node.getFirstChild();
+			if (firstChild != null) {
+				node = firstChild;
+				continue;
+			}
+			
+			while (true) {
+				if (node instanceof Element) {
+					handler.endElement((Element) node);
+				}
+				if (node == document) return;
+				Node nextSibling = node.getNextSibling();
+				if (nextSibling != null) {
+					node = nextSibling;
+					break;
+				}
+				node = node.getParentNode();
+			}
 		}
 	}
 	
+	public interface Backend {
+		
+		public void parse(InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, IOException;
+		
+	}
+	
+	public interface StreamingHandler {
+
+		public void startDocument();
+		
+		public void endDocument();
+		
+		public void startElement(XMLElement element);
+
+		public void endElement(XMLElement element);
+
+		public void processingInstruction(String target, String data, Location location);
+	}
+	
+	/**
+	 * @deprecated implement {@link StreamingHandler} instead
+	 */
+	@Deprecated
 	public interface Handler {
 
 		public void startDocument(Document document);
@@ -0,0 +1,40 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Backend;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class SAXBackend implements Backend {
+	
+	protected ParserContextPool contextPool;
+	
+	public SAXBackend() {
+		this(ParserContextPool.getSharedPool());
+	}
+	
+	public SAXBackend(ParserContextPool contextPool) {
+		this.contextPool = contextPool;
+	}
+	
+	@Override
+	public void parse(InputStream inputStream, StreamingHandler handler) throws ParserConfigurationException, SAXException, IOException {
+		ParserContext context = contextPool.acquire();
+		try {
+			SAXParser saxParser = context.getSAXParser();
+			StreamingDispatcher dispatcher = new StreamingDispatcher(handler);
+			saxParser.setProperty(ParserContext.LEXICAL_HANDLER_PROPERTY, dispatcher);
+			saxParser.parse(new InputSource(inputStream), dispatcher);
+		}
+		finally {
+			context.release();
+		}
+	}
+	
+}
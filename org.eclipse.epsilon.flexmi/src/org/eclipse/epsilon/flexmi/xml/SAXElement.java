@@ -0,0 +1,89 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import org.xml.sax.Attributes;
+
+public class SAXElement implements XMLElement {
+	
+	protected String name;
+	protected String[] attributeNames;
+	protected String[] attributeValues;
+	protected String text;
+	protected Location location;
+	
+	public SAXElement(String name, Attributes attributes, Location location) {
+		this.name = name;
+		this.location = location;
+		int length = attributes.getLength();
+		attributeNames = new String[length];
+		attributeValues = new String[length];
+		for (int i = 0; i < length; i++) {
+			attributeNames[i] = attributes.getQName(i);
+			attributeValues[i] = attributes.getValue(i);
+		}
+		sortAttributes();
+	}
+	
+	// Keep attributes in the same (name) order in which DOM attribute maps
+	// hand them out, so that streaming and DOM parsing produce the same model
+	protected void sortAttributes() {
+		for (int i = 1; i < attributeNames.length; i++) {
+			String name = attributeNames[i];
+			String value = attributeValues[i];
+			int j = i - 1;
+			while (j >= 0 && attributeNames[j].compareTo(name) > 0) {
+				attributeNames[j + 1] = attributeNames[j];
+				attributeValues[j + 1] = attributeValues[j];
+				j--;
+			}
+			attributeNames[j + 1] = name;
+			attributeValues[j + 1] = value;
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public int getAttributeCount() {
+		return attributeNames.length;
+	}
+	
+	@Override
+	public String getAttributeName(int index) {
+		return attributeNames[index];
+	}
+	
+	@Override
+	public String getAttributeValue(int index) {
+		return attributeValues[index];
+	}
+	
+	@Override
+	public int getAttributeIndex(String name) {
+		for (int i = 0; i < attributeNames.length; i++) {
+			if (attributeNames[i].equals(name)) return i;
+		}
+		return -1;
+	}
+	
+	@Override
+	public String getText() {
+		return text;
+	}
+	
+	public void setText(String text) {
+		this.text = text;
+	}
+	
+	@Override
+	public Location getLocation() {
+		return location;
+	}
+	
+	public void setLocation(Location location) {
+		this.location = location;
+	}
+	
+}
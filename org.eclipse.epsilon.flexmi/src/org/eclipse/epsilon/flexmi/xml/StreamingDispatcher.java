@@ -0,0 +1,108 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.util.Stack;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * Forwards SAX events to a {@link StreamingHandler} without building a DOM. The start
+ * of an element is held back until its first non-text child (or its end) is
+ * encountered, so that handlers can tell whether an element contains nothing
+ * but text. Only the elements on the current path are kept in memory.
+ */
+public class StreamingDispatcher extends DefaultHandler2 {
+	
+	protected StreamingHandler handler;
+	protected Locator locator;
+	protected Stack<SAXElement> elementStack = new Stack<SAXElement>();
+	protected SAXElement pendingElement = null;
+	protected StringBuilder pendingText = new StringBuilder();
+	
+	public StreamingDispatcher(StreamingHandler handler) {
+		this.handler = handler;
+	}
+	
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+	}
+	
+	@Override
+	public void startDocument() throws SAXException {
+		handler.startDocument();
+	}
+	
+	@Override
+	public void endDocument() throws SAXException {
+		handler.endDocument();
+	}
+	
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		flushPendingElement();
+		SAXElement element = new SAXElement(qName, attributes, getCurrentLocation());
+		elementStack.push(element);
+		pendingElement = element;
+		pendingText.setLength(0);
+	}
+	
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		SAXElement element = elementStack.pop();
+		Location start = element.getLocation();
+		element.setLocation(new Location(start.getStartLine(), start.getStartColumn(), getLineNumber(), getColumnNumber()));
+		
+		if (element == pendingElement) {
+			if (pendingText.length() > 0) element.setText(pendingText.toString());
+			flushPendingElement();
+		}
+		handler.endElement(element);
+	}
+	
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (pendingElement != null) pendingText.append(ch, start, length);
+	}
+	
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		characters(ch, start, length);
+	}
+	
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		flushPendingElement();
+		handler.processingInstruction(target, data, getCurrentLocation());
+	}
+	
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		flushPendingElement();
+	}
+	
+	protected void flushPendingElement() {
+		if (pendingElement != null) {
+			SAXElement element = pendingElement;
+			pendingElement = null;
+			pendingText.setLength(0);
+			handler.startElement(element);
+		}
+	}
+	
+	protected Location getCurrentLocation() {
+		return new Location(getLineNumber(), getColumnNumber(), getLineNumber(), getColumnNumber());
+	}
+	
+	protected int getLineNumber() {
+		return locator != null ? locator.getLineNumber() : 0;
+	}
+	
+	protected int getColumnNumber() {
+		return locator != null ? locator.getColumnNumber() : 0;
+	}
+	
+}
@@ -0,0 +1,37 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Backend;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses with the {@link XMLTokenizer} of a pooled {@link ParserContext},
+ * so that tokenizers (and their symbol tables) are reused across parses.
+ */
+public class TokenizerBackend implements Backend {
+	
+	protected ParserContextPool contextPool;
+	
+	public TokenizerBackend() {
+		this(ParserContextPool.getSharedPool());
+	}
+	
+	public TokenizerBackend(ParserContextPool contextPool) {
+		this.contextPool = contextPool;
+	}
+	
+	@Override
+	public void parse(InputStream inputStream, StreamingHandler handler) throws SAXException, IOException {
+		ParserContext context = contextPool.acquire();
+		try {
+			context.getTokenizer().parse(inputStream, handler);
+		}
+		finally {
+			context.release();
+		}
+	}
+	
+}
@@ -0,0 +1,20 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+public interface XMLElement {
+	
+	public String getName();
+	
+	public int getAttributeCount();
+	
+	public String getAttributeName(int index);
+	
+	public String getAttributeValue(int index);
+	
+	public int getAttributeIndex(String name);
+	
+	// Returns the text of the element if text is its only child, null otherwise
+	public String getText();
+	
+	public Location getLocation();
+	
+}
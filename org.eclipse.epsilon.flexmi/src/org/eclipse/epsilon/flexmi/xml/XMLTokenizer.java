@@ -0,0 +1,777 @@
+package org.eclipse.epsilon.flexmi.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.Backend;
+import org.eclipse.epsilon.flexmi.xml.PseudoSAXParser.StreamingHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * A purpose-built tokenizer for the subset of XML used by Flexmi documents
+ * (elements, attributes, text, CDATA, comments and processing instructions).
+ * It works directly over a char buffer: element and attribute names are
+ * interned through a symbol table that is kept across parses, and attribute
+ * values are only turned into strings when they are asked for. DTDs are
+ * skipped and only the predefined and character entities are supported.
+ * <p>
+ * Like {@link SAXBackend}, the start of an element is delivered once its first
+ * non-text child (or its end tag) is encountered. Instances are not
+ * thread-safe.
+ */
+public class XMLTokenizer implements Backend {
+
+	protected static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+	protected static final int MAX_SYMBOLS = 4096;
+	protected static final int PREFIX_SIZE = 1024;
+	protected static final int CHUNK_SIZE = 8192;
+
+	protected char[] buffer;
+	protected int start;
+	protected int pos;
+	protected int end;
+	protected StreamingHandler handler;
+
+	protected TokenizedElement[] elementStack = new TokenizedElement[32];
+	protected int depth;
+	protected TokenizedElement pendingElement;
+	protected StringBuilder pendingText = new StringBuilder();
+	protected boolean rootClosed;
+
+	// Position up to which line numbers have been computed
+	protected int linePos;
+	protected int line;
+	protected int lineStart;
+
+	protected String[] symbols = new String[512];
+	protected int symbolCount = 0;
+
+	// Scratch space for attributes of the start tag being tokenized
+	protected int[] attributeBounds = new int[32];
+	protected boolean[] attributeNeedsDecoding = new boolean[8];
+
+	/**
+	 * Decodes the input in chunks, so that the document is held in memory
+	 * as characters only, and not as bytes as well
+	 */
+	@Override
+	public void parse(InputStream inputStream, StreamingHandler handler) throws SAXException, IOException {
+		// Enough to hold the byte order mark and the XML declaration
+		byte[] prefix = new byte[PREFIX_SIZE];
+		int length = 0;
+		int read;
+		while (length < prefix.length && (read = inputStream.read(prefix, length, prefix.length - length)) != -1) {
+			length += read;
+		}
+		parse(prefix, 0, length, length < prefix.length ? null : inputStream, handler);
+	}
+
+	public void parse(byte[] bytes, int offset, int length, StreamingHandler handler) throws SAXException, IOException {
+		parse(bytes, offset, length, null, handler);
+	}
+	
+	/**
+	 * Parses the bytes followed by the rest of the input stream, if any,
+	 * detecting the encoding from the first bytes
+	 */
+	protected void parse(byte[] bytes, int offset, int length, InputStream rest, StreamingHandler handler) throws SAXException, IOException {
+		String encoding = "UTF-8";
+		if (length >= 3 && (bytes[offset] & 0xFF) == 0xEF && (bytes[offset + 1] & 0xFF) == 0xBB && (bytes[offset + 2] & 0xFF) == 0xBF) {
+			offset += 3; length -= 3;
+		}
+		else if (length >= 2 && (bytes[offset] & 0xFF) == 0xFE && (bytes[offset + 1] & 0xFF) == 0xFF) {
+			encoding = "UTF-16BE"; offset += 2; length -= 2;
+		}
+		else if (length >= 2 && (bytes[offset] & 0xFF) == 0xFF && (bytes[offset + 1] & 0xFF) == 0xFE) {
+			encoding = "UTF-16LE"; offset += 2; length -= 2;
+		}
+		else if (length >= 2 && bytes[offset] == 0 && bytes[offset + 1] == '<') {
+			encoding = "UTF-16BE";
+		}
+		else if (length >= 2 && bytes[offset] == '<' && bytes[offset + 1] == 0) {
+			encoding = "UTF-16LE";
+		}
+		else if (length >= 5 && bytes[offset] == '<' && bytes[offset + 1] == '?' && bytes[offset + 2] == 'x' && bytes[offset + 3] == 'm' && bytes[offset + 4] == 'l') {
+			int declarationEnd = offset;
+			while (declarationEnd < offset + length && bytes[declarationEnd] != '>') declarationEnd++;
+			Matcher matcher = ENCODING_PATTERN.matcher(new String(bytes, offset, declarationEnd - offset, "ISO-8859-1"));
+			if (matcher.find()) encoding = matcher.group(1);
+		}
+
+		Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		}
+		catch (IllegalArgumentException ex) {
+			// Illegal or unsupported charset names
+			throw new SAXParseException("Invalid encoding name \"" + encoding + "\".", null, null, 1, 1, ex);
+		}
+
+		int expectedLength = rest == null ? length : length + rest.available();
+		CharBuffer chars = decode(charset, ByteBuffer.wrap(bytes, offset, length), rest, expectedLength);
+		parse(chars.array(), 0, chars.limit(), handler);
+	}
+	
+	protected CharBuffer decode(Charset charset, ByteBuffer input, InputStream rest, int expectedLength) throws SAXException, IOException {
+		CharsetDecoder decoder = charset.newDecoder().
+				onMalformedInput(CodingErrorAction.REPORT).
+				onUnmappableCharacter(CodingErrorAction.REPORT);
+		// Most encodings take at least a byte per character
+		CharBuffer chars = CharBuffer.allocate(Math.max(expectedLength, 64));
+		ByteBuffer chunk = null;
+		boolean endOfInput = rest == null;
+		while (true) {
+			CoderResult result = decoder.decode(input, chars, endOfInput);
+			if (result.isError()) {
+				try {
+					result.throwException();
+				}
+				catch (CharacterCodingException ex) {
+					throw decodingError(charset, chars, ex);
+				}
+			}
+			if (result.isOverflow()) {
+				chars = grow(chars);
+			}
+			else if (endOfInput) {
+				break;
+			}
+			else {
+				// Carry the bytes of an incomplete character over to the next chunk
+				if (chunk == null) {
+					chunk = ByteBuffer.allocate(CHUNK_SIZE);
+					chunk.put(input);
+				}
+				else {
+					chunk.compact();
+				}
+				int read = rest.read(chunk.array(), chunk.position(), chunk.remaining());
+				if (read == -1) endOfInput = true;
+				else chunk.position(chunk.position() + read);
+				chunk.flip();
+				input = chunk;
+			}
+		}
+		while (decoder.flush(chars).isOverflow()) chars = grow(chars);
+		chars.flip();
+		return chars;
+	}
+
+	protected CharBuffer grow(CharBuffer chars) {
+		CharBuffer grown = CharBuffer.allocate(chars.capacity() * 2);
+		chars.flip();
+		grown.put(chars);
+		return grown;
+	}
+	
+	// Locates the error after the characters decoded so far
+	protected SAXParseException decodingError(Charset charset, CharBuffer chars, CharacterCodingException ex) {
+		char[] decoded = chars.array();
+		int line = 1, lineStart = 0;
+		for (int i = 0; i < chars.position(); i++) {
+			if (decoded[i] == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+		return new SAXParseException("Invalid byte sequence for encoding " + charset.name() + ".", null, null, line, chars.position() - lineStart + 1, ex);
+	}
+	
+	/**
+	 * Parses the characters, which elements refer to until their attribute
+	 * values have been read, so the characters must not change until then
+	 */
+	public void parse(char[] chars, int offset, int length, StreamingHandler handler) throws SAXException {
+		this.buffer = chars;
+		this.start = offset;
+		this.pos = offset;
+		this.end = offset + length;
+		this.handler = handler;
+		this.depth = 0;
+		this.pendingElement = null;
+		this.pendingText.setLength(0);
+		this.rootClosed = false;
+		this.linePos = offset;
+		this.lineStart = offset;
+		this.line = 1;
+		if (symbolCount > MAX_SYMBOLS) {
+			symbols = new String[512];
+			symbolCount = 0;
+		}
+
+		try {
+			handler.startDocument();
+			if (startsWith("<?xml") && pos + 5 < end && isWhitespace(buffer[pos + 5])) {
+				pos = indexOf("?>", pos) + 2;
+			}
+			tokenize();
+			handler.endDocument();
+		}
+		finally {
+			this.buffer = null;
+			this.handler = null;
+			this.pendingElement = null;
+			for (int i = 0; i < depth; i++) elementStack[i] = null;
+		}
+	}
+
+	protected void tokenize() throws SAXException {
+		while (pos < end) {
+			if (buffer[pos] == '<') {
+				if (startsWith("<?")) processingInstruction();
+				else if (startsWith("<!--")) comment();
+				else if (startsWith("<![CDATA[")) cdata();
+				else if (startsWith("<!DOCTYPE")) doctype();
+				else if (startsWith("</")) endTag();
+				else startTag();
+			}
+			else {
+				text();
+			}
+		}
+		if (depth > 0) throw error("XML document structures must start and end within the same entity.", end);
+		if (!rootClosed) throw error("Premature end of file.", end);
+	}
+
+	protected void startTag() throws SAXException {
+		if (rootClosed) throw error("The markup in the document following the root element must be well-formed.", pos);
+		flushPendingElement();
+		pos++;
+		int nameStart = pos;
+		int nameEnd = scanName();
+		String name = symbol(nameStart, nameEnd);
+
+		int attributes = 0;
+		boolean empty = false;
+		while (true) {
+			boolean whitespace = skipWhitespace();
+			if (pos >= end) throw error("XML document structures must start and end within the same entity.", pos);
+			char c = buffer[pos];
+			if (c == '>') {
+				pos++;
+				break;
+			}
+			else if (c == '/') {
+				if (pos + 1 >= end || buffer[pos + 1] != '>') throw error("Element type \"" + name + "\" must be followed by either attribute specifications, \">\" or \"/>\".", pos);
+				pos += 2;
+				empty = true;
+				break;
+			}
+			if (!whitespace) throw error("Element type \"" + name + "\" must be followed by either attribute specifications, \">\" or \"/>\".", pos);
+
+			int attributeNameStart = pos;
+			int attributeNameEnd = scanName();
+			skipWhitespace();
+			if (pos >= end || buffer[pos] != '=') throw error("Attribute name \"" + new String(buffer, attributeNameStart, attributeNameEnd - attributeNameStart) + "\" associated with an element type \"" + name + "\" must be followed by the ' = ' character.", pos);
+			pos++;
+			skipWhitespace();
+			if (pos >= end || (buffer[pos] != '"' && buffer[pos] != '\'')) throw error("Open quote is expected for attribute \"" + new String(buffer, attributeNameStart, attributeNameEnd - attributeNameStart) + "\" associated with an element type \"" + name + "\".", pos);
+			char quote = buffer[pos++];
+			int valueStart = pos;
+			boolean needsDecoding = false;
+			while (pos < end && buffer[pos] != quote) {
+				c = buffer[pos];
+				if (c == '<') throw error("The value of attribute \"" + new String(buffer, attributeNameStart, attributeNameEnd - attributeNameStart) + "\" associated with an element type \"" + name + "\" must not contain the '<' character.", pos);
+				if (c == '&' || c == '\n' || c == '\r' || c == '\t') needsDecoding = true;
+				pos++;
+			}
+			if (pos >= end) throw error("XML document structures must start and end within the same entity.", pos);
+			int valueEnd = pos++;
+			if (needsDecoding) validateEntities(valueStart, valueEnd);
+
+			for (int i = 0; i < attributes; i++) {
+				if (rangeEquals(attributeBounds[i * 4], attributeBounds[i * 4 + 1], attributeNameStart, attributeNameEnd)) {
+					throw error("Attribute \"" + new String(buffer, attributeNameStart, attributeNameEnd - attributeNameStart) + "\" was already specified for element \"" + name + "\".", pos);
+				}
+			}
+			if ((attributes + 1) * 4 > attributeBounds.length) {
+				int[] bounds = new int[attributeBounds.length * 2];
+				System.arraycopy(attributeBounds, 0, bounds, 0, attributeBounds.length);
+				attributeBounds = bounds;
+				boolean[] decoding = new boolean[attributeNeedsDecoding.length * 2];
+				System.arraycopy(attributeNeedsDecoding, 0, decoding, 0, attributeNeedsDecoding.length);
+				attributeNeedsDecoding = decoding;
+			}
+			attributeBounds[attributes * 4] = attributeNameStart;
+			attributeBounds[attributes * 4 + 1] = attributeNameEnd;
+			attributeBounds[attributes * 4 + 2] = valueStart;
+			attributeBounds[attributes * 4 + 3] = valueEnd;
+			attributeNeedsDecoding[attributes] = needsDecoding;
+			attributes++;
+		}
+
+		locate(pos);
+		TokenizedElement element = new TokenizedElement(buffer, name, attributes, line, pos - lineStart + 1);
+		for (int i = 0; i < attributes; i++) {
+			element.attributeNames[i] = symbol(attributeBounds[i * 4], attributeBounds[i * 4 + 1]);
+			element.attributeValueStarts[i] = attributeBounds[i * 4 + 2];
+			element.attributeValueEnds[i] = attributeBounds[i * 4 + 3];
+			element.attributeValuesNeedDecoding[i] = attributeNeedsDecoding[i];
+		}
+		element.sortAttributes();
+
+		if (empty) {
+			element.setEnd(element.startLine, element.startColumn);
+			handler.startElement(element);
+			handler.endElement(element);
+			if (depth == 0) rootClosed = true;
+		}
+		else {
+			if (depth == elementStack.length) {
+				TokenizedElement[] stack = new TokenizedElement[depth * 2];
+				System.arraycopy(elementStack, 0, stack, 0, depth);
+				elementStack = stack;
+			}
+			elementStack[depth++] = element;
+			pendingElement = element;
+			pendingText.setLength(0);
+		}
+	}
+
+	protected void endTag() throws SAXException {
+		int tagStart = pos;
+		pos += 2;
+		int nameStart = pos;
+		int nameEnd = scanName();
+		skipWhitespace();
+		if (pos >= end || buffer[pos] != '>') throw error("The end-tag for element type \"" + new String(buffer, nameStart, nameEnd - nameStart) + "\" must end with a '>' delimiter.", pos);
+		pos++;
+
+		if (depth == 0) throw error("The markup in the document following the root element must be well-formed.", tagStart);
+		TokenizedElement element = elementStack[--depth];
+		elementStack[depth] = null;
+		if (!rangeEquals(element.name, nameStart, nameEnd)) {
+			throw error("The element type \"" + element.name + "\" must be terminated by the matching end-tag \"</" + element.name + ">\".", tagStart);
+		}
+
+		locate(pos);
+		element.setEnd(line, pos - lineStart + 1);
+		if (element == pendingElement) {
+			if (pendingText.length() > 0) element.text = pendingText.toString();
+			flushPendingElement();
+		}
+		handler.endElement(element);
+		if (depth == 0) rootClosed = true;
+	}
+
+	protected void text() throws SAXException {
+		int start = pos;
+		boolean entities = false;
+		while (pos < end && buffer[pos] != '<') {
+			if (buffer[pos] == '&') entities = true;
+			pos++;
+		}
+		if (entities) validateEntities(start, pos);
+
+		if (depth == 0) {
+			for (int i = start; i < pos; i++) {
+				if (!isWhitespace(buffer[i])) {
+					throw error(rootClosed ? "Content is not allowed in trailing section." : "Content is not allowed in prolog.", i);
+				}
+			}
+		}
+		else if (pendingElement != null) {
+			decode(buffer, start, pos, false, pendingText);
+		}
+	}
+
+	protected void cdata() throws SAXException {
+		if (depth == 0) throw error("The markup in the document following the root element must be well-formed.", pos);
+		int start = pos + 9;
+		int close = indexOf("]]>", start);
+		if (pendingElement != null) {
+			appendNormalizingLineEnds(start, close, pendingText);
+		}
+		pos = close + 3;
+	}
+
+	protected void comment() throws SAXException {
+		int close = indexOf("-->", pos + 4);
+		pos = close + 3;
+		flushPendingElement();
+	}
+
+	protected void processingInstruction() throws SAXException {
+		pos += 2;
+		int targetStart = pos;
+		int targetEnd = scanName();
+		String target = symbol(targetStart, targetEnd);
+		if ("xml".equalsIgnoreCase(target)) throw error("The processing instruction target matching \"[xX][mM][lL]\" is not allowed.", targetStart);
+		boolean whitespace = skipWhitespace();
+		int close = indexOf("?>", pos);
+		if (!whitespace && close != pos) throw error("White space is required between the processing instruction target and data.", pos);
+		StringBuilder data = new StringBuilder(close - pos);
+		appendNormalizingLineEnds(pos, close, data);
+		pos = close + 2;
+
+		flushPendingElement();
+		locate(pos);
+		int column = pos - lineStart + 1;
+		handler.processingInstruction(target, data.toString(), new Location(line, column, line, column));
+	}
+
+	protected void doctype() throws SAXException {
+		if (depth > 0 || rootClosed) throw error("The markup in the document following the root element must be well-formed.", pos);
+		pos += 9;
+		char quote = 0;
+		boolean subset = false;
+		while (pos < end) {
+			char c = buffer[pos++];
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+			}
+			else if (c == '"' || c == '\'') quote = c;
+			else if (c == '[') subset = true;
+			else if (c == ']') subset = false;
+			else if (c == '>' && !subset) return;
+		}
+		throw error("XML document structures must start and end within the same entity.", end);
+	}
+
+	protected void flushPendingElement() {
+		if (pendingElement != null) {
+			TokenizedElement element = pendingElement;
+			pendingElement = null;
+			pendingText.setLength(0);
+			handler.startElement(element);
+		}
+	}
+
+	protected void validateEntities(int start, int end) throws SAXException {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] != '&') continue;
+			int semicolon = i + 1;
+			while (semicolon < end && buffer[semicolon] != ';') semicolon++;
+			if (semicolon >= end) throw error("The reference to entity must end with the ';' delimiter.", i);
+			if (semicolon == i + 1) throw error("The entity name must immediately follow the '&' in the entity reference.", i);
+			if (buffer[i + 1] == '#') {
+				int codePoint = resolveCharacterReference(buffer, i + 1, semicolon);
+				if (codePoint < 0) throw error("A character reference must be a valid character.", i);
+				if (!isXMLChar(codePoint)) throw error("Character reference \"" + new String(buffer, i, semicolon - i) + "\" is an invalid XML character.", semicolon + 1);
+			}
+			else if (resolveEntity(buffer, i + 1, semicolon) == 0) {
+				throw error("The entity \"" + new String(buffer, i + 1, semicolon - i - 1) + "\" was referenced, but not declared.", i);
+			}
+			i = semicolon;
+		}
+	}
+	
+	// Appends the (already validated) text in [start, end) to the builder,
+	// resolving entity references and normalizing line ends (and, for
+	// attribute values, whitespace characters)
+	protected static void decode(char[] chars, int start, int end, boolean attribute, StringBuilder sb) {
+		int i = start;
+		while (i < end) {
+			char c = chars[i];
+			if (c == '&') {
+				int semicolon = i + 1;
+				while (chars[semicolon] != ';') semicolon++;
+				if (chars[i + 1] == '#') sb.appendCodePoint(resolveCharacterReference(chars, i + 1, semicolon));
+				else sb.append(resolveEntity(chars, i + 1, semicolon));
+				i = semicolon + 1;
+			}
+			else if (c == '\r') {
+				sb.append(attribute ? ' ' : '\n');
+				i++;
+				if (i < end && chars[i] == '\n') i++;
+			}
+			else if (attribute && (c == '\n' || c == '\t')) {
+				sb.append(' ');
+				i++;
+			}
+			else {
+				sb.append(c);
+				i++;
+			}
+		}
+	}
+	
+	// Returns the code point of a &#...; reference, or -1 if it is invalid
+	protected static int resolveCharacterReference(char[] chars, int start, int end) {
+		int radix = 10;
+		int i = start + 1;
+		if (i < end && chars[i] == 'x') {
+			radix = 16;
+			i++;
+		}
+		if (i == end) return -1;
+		int codePoint = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(chars[i], radix);
+			if (digit < 0) return -1;
+			codePoint = codePoint * radix + digit;
+			if (codePoint > Character.MAX_CODE_POINT) return -1;
+		}
+		return codePoint;
+	}
+	
+	// Whether the code point matches the Char production of XML 1.0, as
+	// checked by the SAX backend
+	protected static boolean isXMLChar(int codePoint) {
+		if (codePoint < 0x20) return codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD;
+		if (codePoint <= 0xD7FF) return true;
+		if (codePoint < 0xE000) return false;
+		return codePoint <= 0xFFFD || (codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT);
+	}
+	
+	// Returns the character of a predefined entity, or 0 if there is none
+	protected static char resolveEntity(char[] chars, int start, int end) {
+		if (rangeEquals(chars, "lt", start, end)) return '<';
+		else if (rangeEquals(chars, "gt", start, end)) return '>';
+		else if (rangeEquals(chars, "amp", start, end)) return '&';
+		else if (rangeEquals(chars, "quot", start, end)) return '"';
+		else if (rangeEquals(chars, "apos", start, end)) return '\'';
+		return 0;
+	}
+	
+	protected void appendNormalizingLineEnds(int start, int end, StringBuilder sb) {
+		for (int i = start; i < end; i++) {
+			char c = buffer[i];
+			if (c == '\r') {
+				sb.append('\n');
+				if (i + 1 < end && buffer[i + 1] == '\n') i++;
+			}
+			else sb.append(c);
+		}
+	}
+
+	protected int scanName() throws SAXException {
+		int start = pos;
+		while (pos < end) {
+			char c = buffer[pos];
+			if (isWhitespace(c) || c == '=' || c == '/' || c == '>' || c == '<' || c == '?' || c == '"' || c == '\'') break;
+			pos++;
+		}
+		if (pos == start || Character.isDigit(buffer[start]) || buffer[start] == '-' || buffer[start] == '.') {
+			throw error("The markup in the document preceding the root element must be well-formed.", start);
+		}
+		return pos;
+	}
+
+	protected boolean skipWhitespace() {
+		int start = pos;
+		while (pos < end && isWhitespace(buffer[pos])) pos++;
+		return pos > start;
+	}
+
+	protected boolean isWhitespace(char c) {
+		return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+	}
+
+	protected boolean startsWith(String prefix) {
+		if (pos + prefix.length() > end) return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (buffer[pos + i] != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	protected int indexOf(String delimiter, int from) throws SAXException {
+		char first = delimiter.charAt(0);
+		int last = end - delimiter.length();
+		outer:
+		for (int i = from; i <= last; i++) {
+			if (buffer[i] != first) continue;
+			for (int j = 1; j < delimiter.length(); j++) {
+				if (buffer[i + j] != delimiter.charAt(j)) continue outer;
+			}
+			return i;
+		}
+		throw error("XML document structures must start and end within the same entity.", end);
+	}
+
+	protected boolean rangeEquals(String string, int start, int end) {
+		return rangeEquals(buffer, string, start, end);
+	}
+	
+	protected static boolean rangeEquals(char[] chars, String string, int start, int end) {
+		if (string.length() != end - start) return false;
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) != chars[start + i]) return false;
+		}
+		return true;
+	}
+
+	protected boolean rangeEquals(int start, int end, int otherStart, int otherEnd) {
+		if (end - start != otherEnd - otherStart) return false;
+		for (int i = 0; i < end - start; i++) {
+			if (buffer[start + i] != buffer[otherStart + i]) return false;
+		}
+		return true;
+	}
+
+	// Returns the shared String for the characters in [start, end)
+	protected String symbol(int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) hash = 31 * hash + buffer[i];
+
+		int mask = symbols.length - 1;
+		int index = (hash ^ (hash >>> 16)) & mask;
+		String symbol;
+		while ((symbol = symbols[index]) != null) {
+			if (symbol.hashCode() == hash && rangeEquals(symbol, start, end)) return symbol;
+			index = (index + 1) & mask;
+		}
+
+		symbol = new String(buffer, start, end - start);
+		symbols[index] = symbol;
+		if (++symbolCount * 2 > symbols.length) {
+			String[] oldSymbols = symbols;
+			symbols = new String[oldSymbols.length * 2];
+			mask = symbols.length - 1;
+			for (String oldSymbol : oldSymbols) {
+				if (oldSymbol == null) continue;
+				int h = oldSymbol.hashCode();
+				int i = (h ^ (h >>> 16)) & mask;
+				while (symbols[i] != null) i = (i + 1) & mask;
+				symbols[i] = oldSymbol;
+			}
+		}
+		return symbol;
+	}
+
+	// Advances the line counter up to the given position
+	protected void locate(int position) {
+		if (position < linePos) {
+			linePos = start;
+			lineStart = start;
+			line = 1;
+		}
+		while (linePos < position) {
+			char c = buffer[linePos++];
+			if (c == '\n' || (c == '\r' && (linePos >= end || buffer[linePos] != '\n'))) {
+				line++;
+				lineStart = linePos;
+			}
+		}
+	}
+
+	protected SAXParseException error(String message, int position) {
+		locate(Math.min(position, end));
+		return new SAXParseException(message, null, null, line, linePos - lineStart + 1);
+	}
+
+	protected static class TokenizedElement implements XMLElement {
+
+		protected String name;
+		protected String[] attributeNames;
+		protected int[] attributeValueStarts;
+		protected int[] attributeValueEnds;
+		protected boolean[] attributeValuesNeedDecoding;
+		protected String[] attributeValues;
+		protected char[] source;
+		protected String text;
+		protected int startLine, startColumn, endLine, endColumn;
+		protected Location location;
+
+		public TokenizedElement(char[] source, String name, int attributes, int line, int column) {
+			this.source = source;
+			this.name = name;
+			this.attributeNames = new String[attributes];
+			this.attributeValueStarts = new int[attributes];
+			this.attributeValueEnds = new int[attributes];
+			this.attributeValuesNeedDecoding = new boolean[attributes];
+			this.attributeValues = new String[attributes];
+			this.startLine = this.endLine = line;
+			this.startColumn = this.endColumn = column;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public int getAttributeCount() {
+			return attributeNames.length;
+		}
+
+		@Override
+		public String getAttributeName(int index) {
+			return attributeNames[index];
+		}
+
+		/**
+		 * Values are turned into strings the first time they are asked for,
+		 * from the characters of the document, which the element refers to.
+		 * Elements can be read from other threads than the one that tokenizes
+		 * them (see {@link PipelinedBackend}), hence the synchronization.
+		 */
+		@Override
+		public synchronized String getAttributeValue(int index) {
+			String value = attributeValues[index];
+			if (value == null) {
+				int start = attributeValueStarts[index];
+				int length = attributeValueEnds[index] - start;
+				if (attributeValuesNeedDecoding[index]) {
+					StringBuilder sb = new StringBuilder(length);
+					decode(source, start, start + length, true, sb);
+					value = sb.toString();
+				}
+				else {
+					value = new String(source, start, length);
+				}
+				attributeValues[index] = value;
+			}
+			return value;
+		}
+
+		@Override
+		public int getAttributeIndex(String name) {
+			for (int i = 0; i < attributeNames.length; i++) {
+				if (attributeNames[i].equals(name)) return i;
+			}
+			return -1;
+		}
+
+		@Override
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public Location getLocation() {
+			if (location == null) location = new Location(startLine, startColumn, endLine, endColumn);
+			return location;
+		}
+
+		protected void setEnd(int line, int column) {
+			endLine = line;
+			endColumn = column;
+			location = null;
+		}
+
+		// Same (name) order as DOM attribute maps; see SAXElement
+		protected void sortAttributes() {
+			for (int i = 1; i < attributeNames.length; i++) {
+				String name = attributeNames[i];
+				int valueStart = attributeValueStarts[i];
+				int valueEnd = attributeValueEnds[i];
+				boolean needsDecoding = attributeValuesNeedDecoding[i];
+				int j = i - 1;
+				while (j >= 0 && attributeNames[j].compareTo(name) > 0) {
+					attributeNames[j + 1] = attributeNames[j];
+					attributeValueStarts[j + 1] = attributeValueStarts[j];
+					attributeValueEnds[j + 1] = attributeValueEnds[j];
+					attributeValuesNeedDecoding[j + 1] = attributeValuesNeedDecoding[j];
+					j--;
+				}
+				attributeNames[j + 1] = name;
+				attributeValueStarts[j + 1] = valueStart;
+				attributeValueEnds[j + 1] = valueEnd;
+				attributeValuesNeedDecoding[j + 1] = needsDecoding;
+			}
+		}
+	}
+
+}